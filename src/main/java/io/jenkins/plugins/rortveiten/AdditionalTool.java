@@ -0,0 +1,77 @@
+package io.jenkins.plugins.rortveiten;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+
+/**
+ * A checker tool whose warnings and suppression comments are combined with
+ * those of the main tool of a {@link MisraGcsBuilderPlugin}, e.g. Cppcheck in
+ * addition to PC-lint.
+ */
+public class AdditionalTool extends AbstractDescribableImpl<AdditionalTool> {
+    private String warningParser;
+    private String warningsFile;
+    private String suppressionsFile;
+
+    @DataBoundConstructor
+    public AdditionalTool() {
+    }
+
+    @DataBoundSetter
+    public void setWarningParser(String warningParser) {
+        this.warningParser = warningParser;
+    }
+
+    @DataBoundSetter
+    public void setWarningsFile(String warningsFile) {
+        this.warningsFile = warningsFile;
+    }
+
+    @DataBoundSetter
+    public void setSuppressionsFile(String suppressionsFile) {
+        this.suppressionsFile = suppressionsFile;
+    }
+
+    public String getWarningParser() {
+        return warningParser;
+    }
+
+    public String getWarningsFile() {
+        return warningsFile;
+    }
+
+    public String getSuppressionsFile() {
+        return suppressionsFile;
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends Descriptor<AdditionalTool> {
+
+        @Override
+        public String getDisplayName() {
+            return "Additional tool";
+        }
+
+        public ListBoxModel doFillWarningParserItems() {
+            return MisraGcsBuilderPlugin.warningParserItems();
+        }
+
+        public FormValidation doCheckWarningsFile(@QueryParameter String value) throws IOException, ServletException {
+            if (value.length() == 0) {
+                return FormValidation.error("Required");
+            }
+            return FormValidation.ok();
+        }
+    }
+}
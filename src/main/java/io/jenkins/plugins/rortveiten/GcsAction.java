@@ -8,6 +8,7 @@ import java.io.UnsupportedEncodingException;
 
 import hudson.model.Action;
 import rortveiten.misra.*;
+import rortveiten.misra.ViolationStore.FileViolations;
 import hudson.model.Run;
 import jenkins.tasks.SimpleBuildStep.LastBuildAction;
 
@@ -22,6 +23,8 @@ public class GcsAction implements Action, LastBuildAction {
     private String summary;
     private String tool;
     private String notes;
+    private int[] violationCounts;
+    private List<FileViolations> fileViolations;
     
     public GcsAction(Run<?,?> run, List<Guideline> guidelines, String parserName, String softwareVersion,
             String projectName, String misraVersion, boolean isCompliant, String tool, String summary, String notes) {
@@ -96,6 +99,28 @@ public class GcsAction implements Action, LastBuildAction {
 	public Run<?,?> getRun() {
 	    return run;
 	}
+
+	public void setViolations(int[] violationCounts, List<FileViolations> fileViolations) {
+	    this.violationCounts = violationCounts;
+	    this.fileViolations = fileViolations;
+	}
+
+	/**
+	 * @return The number of violations of each guideline, in the order of
+	 *         {@link #getGuidelines()}, or null for builds made by older versions
+	 *         of the plugin
+	 */
+	public int[] getViolationCounts() {
+	    return violationCounts;
+	}
+
+	/**
+	 * @return The violations of each file, the files with the most violations
+	 *         first, or null for builds made by older versions of the plugin
+	 */
+	public List<FileViolations> getFileViolations() {
+	    return fileViolations;
+	}
 	
 	public boolean isProjectAction() {
 	    return false;
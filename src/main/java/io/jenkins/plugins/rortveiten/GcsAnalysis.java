@@ -0,0 +1,526 @@
+package io.jenkins.plugins.rortveiten;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import io.airlift.compress.zstd.ZstdInputStream;
+import jenkins.MasterToSlaveFileCallable;
+import rortveiten.misra.CompilationDatabase;
+import rortveiten.misra.IncrementalState;
+import rortveiten.misra.SourceFileFinder;
+import rortveiten.misra.WarningParser;
+import rortveiten.misra.WarningParser.MisraVersion;
+
+/**
+ * Runs the whole GCS analysis where the workspace is, i.e. on the agent.
+ * Reading the warnings, scanning the source files and writing the suppression
+ * log all happen locally on the agent, and only a {@link GcsResult} is sent
+ * back to the controller.
+ */
+public class GcsAnalysis extends MasterToSlaveFileCallable<GcsResult> {
+    private static final long serialVersionUID = 1L;
+    private static final int INPUT_BUFFER_SIZE = 64 * 1024;
+    private static final byte[] ZSTD_MAGIC = { 0x28, (byte) 0xb5, 0x2f, (byte) 0xfd };
+    private static final ConcurrentMap<Class<? extends WarningParser>, WarningParser> prototypes = new ConcurrentHashMap<Class<? extends WarningParser>, WarningParser>();
+
+    private final Class<? extends WarningParser> parserClass;
+    private final MisraVersion misraVersion;
+    private final TaskListener listener;
+    private String grpFile;
+    private String warningsFile;
+    private String suppressionsFile;
+    private String sourceListFile;
+    private String sourceIncludes;
+    private String sourceExcludes;
+    private String logFile;
+    private int scanThreads = 1;
+    private String scanCacheFile;
+    private boolean correlateSuppressions;
+    private String sharedScanCacheDirectory;
+    private int sharedScanCacheSizeMb;
+    private String incrementalStateFile;
+    private String changedFilesFile;
+    private final List<ToolInput> additionalTools = new ArrayList<ToolInput>();
+
+    public GcsAnalysis(Class<? extends WarningParser> parserClass, MisraVersion misraVersion,
+            TaskListener listener) {
+        this.parserClass = parserClass;
+        this.misraVersion = misraVersion;
+        this.listener = listener;
+    }
+
+    public void setGrpFile(String grpFile) {
+        this.grpFile = grpFile;
+    }
+
+    public void setWarningsFile(String warningsFile) {
+        this.warningsFile = warningsFile;
+    }
+
+    /**
+     * @param suppressionsFile File in the workspace listing suppressions of the
+     *                         main tool that are not in the source files, e.g.
+     *                         cppcheck's --suppressions-list file. null or empty
+     *                         if there is none.
+     */
+    public void setSuppressionsFile(String suppressionsFile) {
+        this.suppressionsFile = suppressionsFile;
+    }
+
+    public void setSourceListFile(String sourceListFile) {
+        this.sourceListFile = sourceListFile;
+    }
+
+    /**
+     * @param includes Ant-style patterns of source files in the workspace, used
+     *                 in addition to or instead of the source list file
+     * @param excludes Patterns of files not to include, or null
+     */
+    public void setSourceFilePatterns(String includes, String excludes) {
+        this.sourceIncludes = includes;
+        this.sourceExcludes = excludes;
+    }
+
+    public void setLogFile(String logFile) {
+        this.logFile = logFile;
+    }
+
+    public void setScanThreads(int scanThreads) {
+        this.scanThreads = scanThreads;
+    }
+
+    public void setScanCacheFile(String scanCacheFile) {
+        this.scanCacheFile = scanCacheFile;
+    }
+
+    public void setCorrelateSuppressions(boolean correlateSuppressions) {
+        this.correlateSuppressions = correlateSuppressions;
+    }
+
+    /**
+     * @param directory Directory on the agent shared by all builds, or null or
+     *                  empty to not use a shared cache
+     * @param sizeMb    The most disk space the cache may use, in megabytes
+     */
+    public void setSharedScanCache(String directory, int sizeMb) {
+        this.sharedScanCacheDirectory = directory;
+        this.sharedScanCacheSizeMb = sizeMb;
+    }
+
+    /**
+     * @param stateFile        File in the workspace the per-file data of the
+     *                         build is written to, and read from if
+     *                         changedFilesFile is given. null or empty to not
+     *                         keep the data.
+     * @param changedFilesFile File in the workspace listing the files changed
+     *                         since the build that wrote stateFile, e.g. the
+     *                         output of git diff --name-only. null or empty to
+     *                         analyze all files.
+     */
+    public void setIncremental(String stateFile, String changedFilesFile) {
+        this.incrementalStateFile = stateFile;
+        this.changedFilesFile = changedFilesFile;
+    }
+
+    /**
+     * Adds a tool whose warnings and suppression comments are combined with those
+     * of the main tool
+     */
+    public void addTool(Class<? extends WarningParser> parserClass, String warningsFile) {
+        addTool(parserClass, warningsFile, null);
+    }
+
+    /**
+     * Adds a tool whose warnings and suppression comments are combined with those
+     * of the main tool, and whose suppressions file, if any, is read like that of
+     * the main tool
+     */
+    public void addTool(Class<? extends WarningParser> parserClass, String warningsFile, String suppressionsFile) {
+        additionalTools.add(new ToolInput(parserClass, warningsFile, suppressionsFile));
+    }
+
+    @Override
+    public GcsResult invoke(File dir, VirtualChannel channel) throws IOException, InterruptedException {
+        PrintStream logger = listener.getLogger();
+        FilePath workspace = new FilePath(dir);
+        WarningParser parser = prototype(parserClass).newSession(misraVersion, workspace);
+        parser.setLogger(logger);
+        parser.setParallelism(scanThreads);
+        parser.setScanCacheFilePath(scanCacheFile);
+        parser.setCorrelateSuppressions(correlateSuppressions);
+        if (sharedScanCacheDirectory != null && !sharedScanCacheDirectory.isEmpty())
+            parser.setSharedScanCache(new File(sharedScanCacheDirectory), sharedScanCacheSizeMb * 1024L * 1024L);
+        if (logFile == null || logFile.isEmpty())
+            parser.setLogFilePath(null);
+        else
+            parser.setLogFilePath(logFile);
+
+        boolean readFailed = false;
+        if (grpFile != null && !grpFile.isEmpty()) {
+            List<String> grpLines = readAllLines(workspace.child(grpFile), logger);
+            readFailed |= grpLines == null;
+            if (grpLines != null)
+                parser.readGrp(grpLines);
+        }
+        List<String> sourceFiles = findSourceFiles(dir, workspace, logger);
+        List<FilePath> warningsFiles = findWarningsFiles(workspace, warningsFile, logger);
+        List<List<FilePath>> additionalWarningsFiles = new ArrayList<List<FilePath>>(additionalTools.size());
+        for (ToolInput tool : additionalTools) {
+            List<FilePath> files = findWarningsFiles(workspace, tool.warningsFile, logger);
+            readFailed |= files == null;
+            additionalWarningsFiles.add(files);
+        }
+        if (isSet(suppressionsFile))
+            readFailed |= !readSuppressionsFile(parser, suppressionsFile, workspace, logger);
+        List<WarningParser> otherTools = new ArrayList<WarningParser>(additionalTools.size());
+        for (ToolInput toolInput : additionalTools) {
+            WarningParser tool = prototype(toolInput.parserClass).newSession(misraVersion, workspace);
+            tool.setLogger(logger);
+            if (isSet(toolInput.suppressionsFile))
+                readFailed |= !readSuppressionsFile(tool, toolInput.suppressionsFile, workspace, logger);
+            otherTools.add(tool);
+        }
+        if (isSet(incrementalStateFile))
+            readFailed |= !startIncremental(parser, otherTools, workspace, logger);
+        if (readFailed || sourceFiles == null || warningsFiles == null)
+            return GcsResult.readFailure();
+
+        parseWarningsFiles(parser, warningsFiles, workspace, logger);
+        for (int i = 0; i < otherTools.size(); i++) {
+            WarningParser tool = otherTools.get(i);
+            parseWarningsFiles(tool, additionalWarningsFiles.get(i), workspace, logger);
+            parser.addViolationsFrom(tool);
+        }
+        parser.parseSourceFiles(sourceFiles, otherTools);
+        if (isSet(incrementalStateFile))
+            writeIncrementalState(parser.getIncrementalState(), workspace, logger);
+        GcsResult result = new GcsResult(parser.getGuidelines(), parser.getErrorCode(), parser.isCompliant(),
+                parser.summary());
+        result.setViolations(parser.getViolationCounts(),
+                parser.getViolationStore().summarizeByFile(parser.getGuidelines(), workspace.getRemote()));
+        return result;
+    }
+
+    /**
+     * @return The files in the source list file or compilation database and the files matching the
+     *         include patterns, relative to the workspace and without duplicates,
+     *         or null if the source list file could not be read
+     */
+    private List<String> findSourceFiles(File dir, FilePath workspace, PrintStream logger)
+            throws IOException, InterruptedException {
+        Set<String> sourceFiles = new LinkedHashSet<String>();
+        if (isSet(sourceListFile) && CompilationDatabase.isCompilationDatabase(sourceListFile)) {
+            List<String> files = readCompilationDatabase(workspace.child(sourceListFile), dir, logger);
+            if (files == null)
+                return null;
+            sourceFiles.addAll(files);
+        } else if (isSet(sourceListFile)) {
+            List<String> lines = readAllLines(workspace.child(sourceListFile), logger);
+            if (lines == null)
+                return null;
+            for (String path : MisraGcsBuilderPlugin.relativePaths(lines, workspace))
+                sourceFiles.add(path.replace('\\', '/').intern());
+        }
+        if (isSet(sourceIncludes))
+            sourceFiles.addAll(new SourceFileFinder(sourceIncludes, sourceExcludes).find(dir));
+        if (sourceFiles.isEmpty())
+            logger.println("Misra GCS plugin: Warning: No source files to process.");
+        return new ArrayList<String>(sourceFiles);
+    }
+
+    private static boolean isSet(String value) {
+        return value != null && !value.isEmpty();
+    }
+
+    /**
+     * Makes the parsers keep the data of each file, and reuse the data of the
+     * earlier build for unchanged files if a list of changed files is given and
+     * the state of the earlier build can be used.
+     *
+     * @return false if the list of changed files could not be read
+     */
+    private boolean startIncremental(WarningParser parser, List<WarningParser> otherTools, FilePath workspace,
+            PrintStream logger) throws IOException, InterruptedException {
+        IncrementalState previous = null;
+        List<String> changedFiles = Collections.emptyList();
+        if (isSet(changedFilesFile)) {
+            changedFiles = readAllLines(workspace.child(changedFilesFile), logger);
+            if (changedFiles == null)
+                return false;
+            List<WarningParser> tools = new ArrayList<WarningParser>(otherTools.size() + 1);
+            tools.add(parser);
+            tools.addAll(otherTools);
+            previous = readIncrementalState(workspace.child(incrementalStateFile), IncrementalState.fingerprint(tools),
+                    logger);
+        }
+        parser.setIncremental(previous, changedFiles);
+        for (WarningParser tool : otherTools)
+            tool.setIncremental(previous, changedFiles);
+        return true;
+    }
+
+    /**
+     * @return The state, or null if there is none or it was made with other tools
+     *         or settings
+     */
+    private static IncrementalState readIncrementalState(FilePath file, String fingerprint, PrintStream logger)
+            throws InterruptedException {
+        IncrementalState state = null;
+        try {
+            if (file.exists()) {
+                try (InputStream in = file.read()) {
+                    state = IncrementalState.read(in);
+                }
+            }
+        } catch (IOException ex) {
+            logger.println("Misra GCS plugin: Could not read \"" + file + "\": " + ex.getMessage());
+        }
+        if (state == null) {
+            logger.println("Misra GCS plugin: No usable state of an earlier build in \"" + file
+                    + "\". All files are analyzed.");
+            return null;
+        }
+        if (!state.getFingerprint().equals(fingerprint)) {
+            logger.println("Misra GCS plugin: \"" + file
+                    + "\" was made with other tools or settings. All files are analyzed.");
+            return null;
+        }
+        return state;
+    }
+
+    private void writeIncrementalState(IncrementalState state, FilePath workspace, PrintStream logger)
+            throws InterruptedException {
+        try (OutputStream out = workspace.child(incrementalStateFile).write()) {
+            state.write(out);
+        } catch (IOException ex) {
+            logger.println("Misra GCS plugin: Could not write \"" + incrementalStateFile + "\": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * @return The warnings file, or the files matching warningsFile if it is an
+     *         Ant-style pattern such as "lint/**&#47;*.txt", sorted by path. null
+     *         if there are no such files.
+     */
+    private static List<FilePath> findWarningsFiles(FilePath workspace, String warningsFile, PrintStream logger)
+            throws IOException, InterruptedException {
+        FilePath warnings = workspace.child(warningsFile);
+        if (warnings.exists())
+            return Collections.singletonList(warnings);
+        if (!isPattern(warningsFile)) {
+            logger.println("Misra GCS plugin: File not found: " + warnings);
+            return null;
+        }
+        FilePath[] matches = workspace.list(warningsFile);
+        if (matches.length == 0) {
+            logger.println("Misra GCS plugin: No files match \"" + warningsFile + "\"");
+            return null;
+        }
+        Arrays.sort(matches, new Comparator<FilePath>() {
+            @Override
+            public int compare(FilePath a, FilePath b) {
+                return a.getRemote().compareTo(b.getRemote());
+            }
+        });
+        return Arrays.asList(matches);
+    }
+
+    private static boolean isPattern(String path) {
+        return path.indexOf('*') >= 0 || path.indexOf('?') >= 0 || path.indexOf(',') >= 0;
+    }
+
+    /**
+     * Reads all warnings files into the parser. Several files are read at the same
+     * time, each by its own parser, and the violations are then added to the
+     * build's parser in the order of the files.
+     */
+    private void parseWarningsFiles(final WarningParser parser, List<FilePath> files, final FilePath workspace,
+            final PrintStream logger) throws IOException, InterruptedException {
+        if (files.size() == 1) {
+            parseWarningsFile(parser, files.get(0));
+            return;
+        }
+
+        logger.println("Misra GCS plugin: Reading " + files.size() + " warnings files");
+        List<Callable<WarningParser>> tasks = new ArrayList<Callable<WarningParser>>(files.size());
+        for (final FilePath file : files) {
+            tasks.add(new Callable<WarningParser>() {
+                @Override
+                public WarningParser call() throws IOException, InterruptedException {
+                    WarningParser partial = parser.newSession(misraVersion, workspace);
+                    partial.setLogger(logger);
+                    parseWarningsFile(partial, file);
+                    return partial;
+                }
+            });
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+            for (Future<WarningParser> future : pool.invokeAll(tasks))
+                parser.addViolationsFrom(future.get());
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof InterruptedException)
+                throw (InterruptedException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IOException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void parseWarningsFile(WarningParser parser, FilePath file)
+            throws IOException, InterruptedException {
+        try (Reader reader = new InputStreamReader(openInput(file), Charset.defaultCharset())) {
+            parser.parseWarnings(reader);
+        }
+    }
+
+    /**
+     * @return The parser of this type shared by all builds running in this JVM.
+     *         It is never modified; each build gets its own session from it.
+     */
+    private static WarningParser prototype(Class<? extends WarningParser> parserClass) throws IOException {
+        WarningParser prototype = prototypes.get(parserClass);
+        if (prototype == null) {
+            try {
+                prototype = parserClass.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException ex) {
+                throw new IOException("Could not create warning parser " + parserClass.getName(), ex);
+            }
+            WarningParser existing = prototypes.putIfAbsent(parserClass, prototype);
+            if (existing != null)
+                prototype = existing;
+        }
+        return prototype;
+    }
+
+    /**
+     * @return The translation units of a compilation database relative to the
+     *         workspace, or null if the database could not be read
+     */
+    private static List<String> readCompilationDatabase(FilePath file, File dir, PrintStream logger)
+            throws InterruptedException {
+        try (Reader reader = new InputStreamReader(openInput(file), StandardCharsets.UTF_8)) {
+            return CompilationDatabase.readSourceFiles(reader, dir.getAbsolutePath());
+        } catch (IOException ex) {
+            logger.println("Misra GCS plugin: Could not read compilation database " + file + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return false if the file could not be read
+     */
+    private static boolean readSuppressionsFile(WarningParser parser, String fileName, FilePath workspace,
+            PrintStream logger) throws InterruptedException {
+        List<String> lines = readAllLines(workspace.child(fileName), true, logger);
+        if (lines == null)
+            return false;
+        parser.readSuppressionsFile(fileName, lines);
+        return true;
+    }
+
+    /**
+     * @return The non-empty lines of the file, or null if the file could not be
+     *         read
+     */
+    private static List<String> readAllLines(FilePath file, PrintStream logger) throws InterruptedException {
+        return readAllLines(file, false, logger);
+    }
+
+    /**
+     * @param keepEmptyLines true to also return empty lines, so the index of each
+     *                       line is its line number minus one
+     * @return The lines of the file, or null if the file could not be read
+     */
+    private static List<String> readAllLines(FilePath file, boolean keepEmptyLines, PrintStream logger)
+            throws InterruptedException {
+        List<String> ret = new ArrayList<String>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(openInput(file), Charset.defaultCharset()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (keepEmptyLines || !line.isEmpty())
+                    ret.add(line);
+            }
+        } catch (IOException ex) {
+            logger.println("Misra GCS plugin: File not found: " + file);
+            return null;
+        }
+        return ret;
+    }
+
+    /**
+     * Opens a file for reading. Gzip and zstd compressed files are recognized by
+     * their first bytes and decompressed while they are read, so they never have
+     * to be decompressed to disk.
+     *
+     * @param file A plain, gzip or zstd compressed file
+     * @return A stream giving the uncompressed content
+     * @throws IOException If the file cannot be read
+     */
+    static InputStream openInput(FilePath file) throws IOException, InterruptedException {
+        BufferedInputStream in = new BufferedInputStream(file.read(), INPUT_BUFFER_SIZE);
+        try {
+            byte[] magic = new byte[ZSTD_MAGIC.length];
+            in.mark(magic.length);
+            int length = 0;
+            int read;
+            while (length < magic.length && (read = in.read(magic, length, magic.length - length)) > 0)
+                length += read;
+            in.reset();
+            if (length >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b)
+                return new GZIPInputStream(in, INPUT_BUFFER_SIZE);
+            if (length == ZSTD_MAGIC.length && Arrays.equals(magic, ZSTD_MAGIC))
+                return new ZstdInputStream(in);
+            return in;
+        } catch (IOException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    private static class ToolInput implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final Class<? extends WarningParser> parserClass;
+        private final String warningsFile;
+        private final String suppressionsFile;
+
+        ToolInput(Class<? extends WarningParser> parserClass, String warningsFile, String suppressionsFile) {
+            this.parserClass = parserClass;
+            this.warningsFile = warningsFile;
+            this.suppressionsFile = suppressionsFile;
+        }
+    }
+}
@@ -20,6 +20,7 @@ public class GcsProjectAction extends GcsAction {
                 buildAction.getProjectName(), buildAction.getMisraVersion(),
                 buildAction.isCompliant(), buildAction.getTool(), 
                 buildAction.getNotes(), buildAction.getSummary());        
+        setViolations(buildAction.getViolationCounts(), buildAction.getFileViolations());
     }
     
     @Override
@@ -0,0 +1,83 @@
+package io.jenkins.plugins.rortveiten;
+
+import java.io.Serializable;
+import java.util.List;
+
+import rortveiten.misra.Guideline;
+import rortveiten.misra.ViolationStore.FileViolations;
+
+/**
+ * The outcome of a GCS analysis, as sent back from the agent to the controller.
+ * Only the guideline statuses and violation counts are kept, so the result
+ * stays small no matter how many warnings were processed.
+ */
+public class GcsResult implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private List<Guideline> guidelines;
+    private int errorCode;
+    private boolean isCompliant;
+    private String summary;
+    private boolean readFailed;
+    private int[] violationCounts;
+    private List<FileViolations> fileViolations;
+
+    public GcsResult(List<Guideline> guidelines, int errorCode, boolean isCompliant, String summary) {
+        this.guidelines = guidelines;
+        this.errorCode = errorCode;
+        this.isCompliant = isCompliant;
+        this.summary = summary;
+    }
+
+    /**
+     * @param violationCounts The number of violations of each guideline, in the
+     *                        order of the guidelines
+     * @param fileViolations  The violations of each file, summarized by guideline
+     */
+    public void setViolations(int[] violationCounts, List<FileViolations> fileViolations) {
+        this.violationCounts = violationCounts;
+        this.fileViolations = fileViolations;
+    }
+
+    /**
+     * @return A result telling that one of the input files could not be read, so
+     *         no report was created
+     */
+    public static GcsResult readFailure() {
+        GcsResult result = new GcsResult(null, 0, false, "");
+        result.readFailed = true;
+        return result;
+    }
+
+    public List<Guideline> getGuidelines() {
+        return guidelines;
+    }
+
+    /**
+     * @return A bitfield ORed together of all the errors that occurred during the
+     *         analysis (see the errorcodes starting with ERR_ in WarningParser)
+     */
+    public int getErrorCode() {
+        return errorCode;
+    }
+
+    public boolean isCompliant() {
+        return isCompliant;
+    }
+
+    public String getSummary() {
+        return summary;
+    }
+
+    public boolean isReadFailed() {
+        return readFailed;
+    }
+
+    public int[] getViolationCounts() {
+        return violationCounts;
+    }
+
+    public List<FileViolations> getFileViolations() {
+        return fileViolations;
+    }
+}
@@ -2,10 +2,9 @@ package io.jenkins.plugins.rortveiten;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintStream;
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import javax.servlet.ServletException;
@@ -38,20 +37,20 @@ import rortveiten.misra.WarningParser.MisraVersion;
  * TODO:
  * 
  * More elegant error handling
- * Support for using several tools simultaneously
- * Read suppressions from a separate file
+ * Read suppressions from a separate file for PC-lint
  * 
  * Number of source files?
- * Number of violations for each guideline?
- * Advanced -> List of violations/deviations with file/line number?
  * 
  */
 
 public class MisraGcsBuilderPlugin extends Recorder implements SimpleBuildStep {
     /* GRP = Guideline Re-categorization Plan */
     private String grpFile;
+    private String suppressionsFile = "";
     private String warningsFile, sourceListFile;
     private String warningParser;
+    private String sourceIncludes = "";
+    private String sourceExcludes = "";
     private String ruleSet;
     private boolean doFailOnError;
     private boolean doFailOnIncompliance;
@@ -59,6 +58,14 @@ public class MisraGcsBuilderPlugin extends Recorder implements SimpleBuildStep {
     private String projectName;
     private String softwareVersion;
     private String logFile = "";
+    private int scanThreads = 1;
+    private String scanCacheFile = "";
+    private String sharedScanCacheDirectory = "";
+    private int sharedScanCacheSizeMb = 1024;
+    private String incrementalStateFile = "";
+    private String changedFilesFile = "";
+    private boolean correlateSuppressions;
+    private List<AdditionalTool> additionalTools;
 
     @DataBoundConstructor
     public MisraGcsBuilderPlugin() {
@@ -79,6 +86,11 @@ public class MisraGcsBuilderPlugin extends Recorder implements SimpleBuildStep {
         this.grpFile = grpFile;
     }
 
+    @DataBoundSetter
+    public void setSuppressionsFile(String suppressionsFile) {
+        this.suppressionsFile = suppressionsFile;
+    }
+
     @DataBoundSetter
     public void setDoFailOnError(boolean doFailOnError) {
         this.doFailOnError = doFailOnError;
@@ -137,10 +149,32 @@ public class MisraGcsBuilderPlugin extends Recorder implements SimpleBuildStep {
         return grpFile;
     }
 
+    public String getSuppressionsFile() {
+        return suppressionsFile;
+    }
+
     public String getSourceListFile() {
         return sourceListFile;
     }
 
+    public String getSourceIncludes() {
+        return sourceIncludes;
+    }
+
+    @DataBoundSetter
+    public void setSourceIncludes(String sourceIncludes) {
+        this.sourceIncludes = sourceIncludes;
+    }
+
+    public String getSourceExcludes() {
+        return sourceExcludes;
+    }
+
+    @DataBoundSetter
+    public void setSourceExcludes(String sourceExcludes) {
+        this.sourceExcludes = sourceExcludes;
+    }
+
     public String getRuleSet() {
         return ruleSet;
     }
@@ -155,19 +189,13 @@ public class MisraGcsBuilderPlugin extends Recorder implements SimpleBuildStep {
         return null;
     }
 
-    private List<String> readAllLines(FilePath file, Run<?, ?> run, PrintStream logger) {
-        List<String> ret = new ArrayList<String>(0);
-        try {
-            String content = file.readToString();
-            if (!content.isEmpty())
-                ret = Arrays.asList(content.split("[\\r?\\n]+"));
-            else
-                logger.println("Misra GCS plugin: Warning: No source files to process. \"" + file + "\" is empty.");
-        } catch (IOException | InterruptedException ex) {
-            logger.println("Misra GCS plugin: File not found: " + file);
-            run.setResult(Result.FAILURE);
+    static ListBoxModel warningParserItems() {
+        ListBoxModel items = new ListBoxModel();
+        ExtensionList<WarningParser> parsers = WarningParser.all();
+        for (WarningParser parser : parsers) {
+            items.add(parser.name(), parser.name());
         }
-        return ret;
+        return items;
     }
 
     private static boolean isCompatible(String warningParser, String ruleSet) {
@@ -185,44 +213,58 @@ public class MisraGcsBuilderPlugin extends Recorder implements SimpleBuildStep {
             run.setResult(Result.FAILURE);
             return;
         }
+        for (AdditionalTool tool : getAdditionalTools()) {
+            if (!isCompatible(tool.getWarningParser(), ruleSet)) {
+                listener.getLogger().println("Misra GCS plugin: " + ruleSet + " is not supported by "
+                        + tool.getWarningParser() + ". Build failed.");
+                run.setResult(Result.FAILURE);
+                return;
+            }
+        }
         MisraVersion misraVersion = MisraVersion.fromString(ruleSet);
         WarningParser parser = findWarningParser(warningParser);
-        parser.initialize(misraVersion);
-        parser.setWorkspace(workspace);
-        parser.setLogger(listener.getLogger());
-        if (logFile == null || logFile.isEmpty())
-            parser.setLogFilePath(null);
-        else
-            parser.setLogFilePath(logFile);
         EnvVars env = run.getEnvironment(listener);
 
-        if (grpFile != null && !grpFile.isEmpty())
-            parser.readGrp(readAllLines(workspace.child(grpFile), run, listener.getLogger()));
-
-        List<String> warningLines = readAllLines(workspace.child(warningsFile), run, listener.getLogger());
-        List<String> sourceFiles = relativePaths(
-                readAllLines(workspace.child(sourceListFile), run, listener.getLogger()), workspace);
+        GcsAnalysis analysis = new GcsAnalysis(parser.getClass(), misraVersion, listener);
+        analysis.setGrpFile(grpFile);
+        analysis.setWarningsFile(warningsFile);
+        analysis.setSuppressionsFile(suppressionsFile);
+        analysis.setSourceListFile(sourceListFile);
+        analysis.setSourceFilePatterns(sourceIncludes, sourceExcludes);
+        analysis.setLogFile(logFile);
+        analysis.setScanThreads(scanThreads);
+        analysis.setScanCacheFile(scanCacheFile);
+        analysis.setSharedScanCache(sharedScanCacheDirectory, sharedScanCacheSizeMb);
+        analysis.setIncremental(incrementalStateFile, changedFilesFile);
+        analysis.setCorrelateSuppressions(correlateSuppressions);
+        String toolNames = parser.name();
+        for (AdditionalTool tool : getAdditionalTools()) {
+            WarningParser additionalParser = findWarningParser(tool.getWarningParser());
+            analysis.addTool(additionalParser.getClass(), tool.getWarningsFile(), tool.getSuppressionsFile());
+            toolNames += ", " + additionalParser.name();
+        }
+        GcsResult result = workspace.act(analysis);
+        if (result.isReadFailed())
+            run.setResult(Result.FAILURE);
         if (run.getResult() == Result.FAILURE)
             return;
 
-        parser.parseWarnings(warningLines);
-        parser.parseSourceFiles(sourceFiles);
-
-        if (parser.getErrorCode() != 0 && doFailOnError) {
+        if (result.getErrorCode() != 0 && doFailOnError) {
             listener.getLogger()
                     .println("Misra GCS plugin: Build failed because an error occurred during creation of GCS");
             run.setResult(Result.FAILURE);
-        } else if (!parser.isCompliant() && doFailOnIncompliance) {
+        } else if (!result.isCompliant() && doFailOnIncompliance) {
             listener.getLogger().println("Misra GCS plugin: Build failed because the code is not MISRA compliant");
             run.setResult(Result.FAILURE);
         }
 
-        String notes = parser.getErrorCode() == 0 ? ""
+        String notes = result.getErrorCode() == 0 ? ""
                 : "Errors occured during processing. This report is not valid. See console output for details.";
         String _softwareVersion = env.expand(softwareVersion);
         String _projectName = env.expand(projectName);
-        GcsAction action = new GcsAction(run, parser.getGuidelines(), warningParser, _softwareVersion, _projectName,
-                misraVersion.toString(), parser.isCompliant(), parser.name(), parser.summary(), notes);
+        GcsAction action = new GcsAction(run, result.getGuidelines(), warningParser, _softwareVersion, _projectName,
+                misraVersion.toString(), result.isCompliant(), toolNames, result.getSummary(), notes);
+        action.setViolations(result.getViolationCounts(), result.getFileViolations());
         run.addAction(action);
     }
 
@@ -256,12 +298,7 @@ public class MisraGcsBuilderPlugin extends Recorder implements SimpleBuildStep {
         }
 
         public ListBoxModel doFillWarningParserItems() {
-            ListBoxModel items = new ListBoxModel();
-            ExtensionList<WarningParser> parsers = WarningParser.all();
-            for (WarningParser parser : parsers) {
-                items.add(parser.name(), parser.name());
-            }
-            return items;
+            return warningParserItems();
         }
 
         public ListBoxModel doFillRuleSetItems() {
@@ -278,9 +315,10 @@ public class MisraGcsBuilderPlugin extends Recorder implements SimpleBuildStep {
             return FormValidation.ok();
         }
 
-        public FormValidation doCheckSourceListFile(@QueryParameter String value) throws IOException, ServletException {
-            if (value.length() == 0) {
-                return FormValidation.error("Required");
+        public FormValidation doCheckSourceListFile(@QueryParameter String value,
+                @QueryParameter String sourceIncludes) throws IOException, ServletException {
+            if (value.length() == 0 && (sourceIncludes == null || sourceIncludes.length() == 0)) {
+                return FormValidation.error("Required unless source file patterns are given");
             }
             return FormValidation.ok();
         }
@@ -321,4 +359,76 @@ public class MisraGcsBuilderPlugin extends Recorder implements SimpleBuildStep {
         this.logFile = logFile;
     }
 
+    public int getScanThreads() {
+        return scanThreads;
+    }
+
+    @DataBoundSetter
+    public void setScanThreads(int scanThreads) {
+        this.scanThreads = scanThreads;
+    }
+
+    public String getScanCacheFile() {
+        return scanCacheFile;
+    }
+
+    @DataBoundSetter
+    public void setScanCacheFile(String scanCacheFile) {
+        this.scanCacheFile = scanCacheFile;
+    }
+
+    public String getSharedScanCacheDirectory() {
+        return sharedScanCacheDirectory;
+    }
+
+    @DataBoundSetter
+    public void setSharedScanCacheDirectory(String sharedScanCacheDirectory) {
+        this.sharedScanCacheDirectory = sharedScanCacheDirectory;
+    }
+
+    public int getSharedScanCacheSizeMb() {
+        return sharedScanCacheSizeMb;
+    }
+
+    @DataBoundSetter
+    public void setSharedScanCacheSizeMb(int sharedScanCacheSizeMb) {
+        this.sharedScanCacheSizeMb = sharedScanCacheSizeMb;
+    }
+
+    public String getIncrementalStateFile() {
+        return incrementalStateFile;
+    }
+
+    @DataBoundSetter
+    public void setIncrementalStateFile(String incrementalStateFile) {
+        this.incrementalStateFile = incrementalStateFile;
+    }
+
+    public String getChangedFilesFile() {
+        return changedFilesFile;
+    }
+
+    @DataBoundSetter
+    public void setChangedFilesFile(String changedFilesFile) {
+        this.changedFilesFile = changedFilesFile;
+    }
+
+    public boolean isCorrelateSuppressions() {
+        return correlateSuppressions;
+    }
+
+    @DataBoundSetter
+    public void setCorrelateSuppressions(boolean correlateSuppressions) {
+        this.correlateSuppressions = correlateSuppressions;
+    }
+
+    public List<AdditionalTool> getAdditionalTools() {
+        return additionalTools == null ? Collections.<AdditionalTool>emptyList() : additionalTools;
+    }
+
+    @DataBoundSetter
+    public void setAdditionalTools(List<AdditionalTool> additionalTools) {
+        this.additionalTools = additionalTools;
+    }
+
 }
@@ -0,0 +1,158 @@
+package rortveiten.misra;
+
+/**
+ * Single pass lexer that finds all comments in C or C++ source code. The text is
+ * walked once, keeping track of string and character literals, line comments,
+ * block comments and line breaks, so comment openers inside literals are not
+ * mistaken for comments, and the time taken is linear in the length of the
+ * text. Each comment is handed to a {@link CommentVisitor}, which decides
+ * whether it is a suppression comment.
+ */
+public final class CommentLexer {
+
+    public interface CommentVisitor {
+        /**
+         * Called for each comment, in the order they appear in the source.
+         *
+         * @param source         The text being lexed
+         * @param start          Offset of the first character after the comment
+         *                       opener
+         * @param end            Offset just past the comment text. For line
+         *                       comments, this is the line break (or a carriage
+         *                       return right before it). For block comments, this
+         *                       is the closing "*&#47;".
+         * @param lineNumber     The line the comment starts on, counting from 1
+         * @param isBlockComment true for block comments, false for line comments
+         */
+        void visitComment(CharSequence source, int start, int end, int lineNumber, boolean isBlockComment);
+    }
+
+    private CommentLexer() {
+    }
+
+    /**
+     * Finds all comments in the source and passes them to the visitor. Block
+     * comments that are not terminated before the end of the source are ignored.
+     * String and character literals end at an unescaped quote or at the end of
+     * the line.
+     *
+     * @param source  C or C++ source code
+     * @param visitor Receives each comment
+     */
+    public static void lex(CharSequence source, CommentVisitor visitor) {
+        int length = source.length();
+        int line = 1;
+        int i = 0;
+        // C++14 allows quotes as digit separators, e.g. 1'000'000 or 0xFFFF'0000. A
+        // quote is a separator if it is inside a preprocessing number, i.e. a token
+        // that starts with a digit, or a period and a digit. Otherwise, as in
+        // u8'a', it opens a character literal.
+        boolean inToken = false;
+        boolean inNumber = false;
+        while (i < length) {
+            char c = source.charAt(i);
+            if (isPpNumberChar(c) && (c != '\'' || inNumber)) {
+                if (!inToken) {
+                    inToken = true;
+                    inNumber = isDigit(c) || (c == '.' && i + 1 < length && isDigit(source.charAt(i + 1)));
+                }
+                i++;
+                continue;
+            }
+            inToken = false;
+            inNumber = false;
+            if (c == '\n') {
+                line++;
+                i++;
+            } else if (c == '/' && i + 1 < length && source.charAt(i + 1) == '/') {
+                int end = i + 2;
+                while (end < length && source.charAt(end) != '\n')
+                    end++;
+                int textEnd = end > i + 2 && source.charAt(end - 1) == '\r' ? end - 1 : end;
+                visitor.visitComment(source, i + 2, textEnd, line, false);
+                i = end;
+            } else if (c == '/' && i + 1 < length && source.charAt(i + 1) == '*') {
+                int startLine = line;
+                int end = i + 2;
+                while (end + 1 < length && !(source.charAt(end) == '*' && source.charAt(end + 1) == '/')) {
+                    if (source.charAt(end) == '\n')
+                        line++;
+                    end++;
+                }
+                if (end + 1 >= length)
+                    return; // Unterminated comment
+                visitor.visitComment(source, i + 2, end, startLine, true);
+                i = end + 2;
+            } else if (c == '"' || c == '\'') {
+                i = skipLiteral(source, i + 1, c);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /** Returns the offset after the closing quote, or of the line break ending the literal */
+    private static int skipLiteral(CharSequence source, int start, char quote) {
+        int length = source.length();
+        int i = start;
+        while (i < length) {
+            char c = source.charAt(i);
+            if (c == quote)
+                return i + 1;
+            if (c == '\n')
+                return i;
+            if (c == '\\' && i + 1 < length && source.charAt(i + 1) != '\n')
+                i++;
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isPpNumberChar(char c) {
+        return isDigit(c) || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '.' || c == '\'';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * @return The offset of the first non-whitespace character at or after start,
+     *         or end if there is none
+     */
+    public static int skipWhitespace(CharSequence source, int start, int end) {
+        int i = start;
+        while (i < end && isWhitespace(source.charAt(i)))
+            i++;
+        return i;
+    }
+
+    /**
+     * @return The number of line breaks between start and end
+     */
+    public static int countLineBreaks(CharSequence source, int start, int end) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (source.charAt(i) == '\n')
+                count++;
+        }
+        return count;
+    }
+
+    public static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0B;
+    }
+
+    /**
+     * @return true if the text between start and end begins with the prefix
+     */
+    public static boolean startsWith(CharSequence source, int start, int end, String prefix) {
+        if (end - start < prefix.length())
+            return false;
+        for (int j = 0; j < prefix.length(); j++) {
+            if (source.charAt(start + j) != prefix.charAt(j))
+                return false;
+        }
+        return true;
+    }
+}
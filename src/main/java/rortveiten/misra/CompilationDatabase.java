@@ -0,0 +1,111 @@
+package rortveiten.misra;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import rortveiten.misra.JsonPullParser.Token;
+
+/**
+ * Reads the source files of a JSON compilation database, i.e. the
+ * compile_commands.json written by CMake and other build tools. The database is
+ * read as a stream, and only the "directory" and "file" of each entry are kept.
+ * A translation unit that is compiled several times, e.g. once per build
+ * variant, is returned only once.
+ */
+public class CompilationDatabase {
+
+    private CompilationDatabase() {
+    }
+
+    /**
+     * @param path A path
+     * @return true if the path looks like a compilation database rather than a
+     *         list of source files
+     */
+    public static boolean isCompilationDatabase(String path) {
+        String lower = path.toLowerCase();
+        return lower.endsWith(".json") || lower.endsWith(".json.gz");
+    }
+
+    /**
+     * Reads the files of all entries. Each file is resolved against the
+     * directory of its entry, and made relative to the workspace if it is inside
+     * it.
+     *
+     * @param reader        Reader giving the database. It is not closed.
+     * @param workspaceRoot Absolute path of the workspace
+     * @return The files in the order they first appear, with '/' as separator
+     *         and without duplicates. The strings are interned.
+     * @throws IOException If reading fails or the database is not valid JSON
+     */
+    public static List<String> readSourceFiles(Reader reader, String workspaceRoot) throws IOException {
+        String root = normalize(workspaceRoot);
+        if (!root.endsWith("/"))
+            root += "/";
+        Set<String> files = new LinkedHashSet<String>();
+        JsonPullParser json = new JsonPullParser(reader);
+        json.beginArray();
+        while (json.hasNext()) {
+            if (json.peek() != Token.BEGIN_OBJECT) {
+                json.skipValue();
+                continue;
+            }
+            String directory = "";
+            String file = null;
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName();
+                if (name.equals("directory") && json.peek() == Token.STRING)
+                    directory = json.nextString();
+                else if (name.equals("file") && json.peek() == Token.STRING)
+                    file = json.nextString();
+                else
+                    json.skipValue();
+            }
+            json.endObject();
+            if (file != null && !file.isEmpty()) {
+                String path = normalize(isAbsolute(file) || directory.isEmpty() ? file : directory + "/" + file);
+                if (path.startsWith(root))
+                    path = path.substring(root.length());
+                files.add(path.intern());
+            }
+        }
+        json.endArray();
+        return new ArrayList<String>(files);
+    }
+
+    private static boolean isAbsolute(String path) {
+        return path.startsWith("/") || path.startsWith("\\")
+                || (path.length() > 2 && path.charAt(1) == ':' && (path.charAt(2) == '/' || path.charAt(2) == '\\'));
+    }
+
+    /**
+     * Uses '/' as separator and removes "." and ".." segments, e.g. "/b/./x/../a.c"
+     * becomes "/b/a.c"
+     */
+    static String normalize(String path) {
+        String[] segments = path.replace('\\', '/').split("/", -1);
+        List<String> kept = new ArrayList<String>(segments.length);
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.equals(".") || (segment.isEmpty() && i > 0 && i < segments.length - 1))
+                continue;
+            if (segment.equals("..") && !kept.isEmpty() && !kept.get(kept.size() - 1).equals("..")
+                    && !kept.get(kept.size() - 1).isEmpty())
+                kept.remove(kept.size() - 1);
+            else
+                kept.add(segment);
+        }
+        StringBuilder normalized = new StringBuilder(path.length());
+        for (int i = 0; i < kept.size(); i++) {
+            if (i > 0)
+                normalized.append('/');
+            normalized.append(kept.get(i));
+        }
+        return normalized.toString();
+    }
+}
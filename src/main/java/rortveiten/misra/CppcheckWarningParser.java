@@ -1,5 +1,7 @@
 package rortveiten.misra;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 
 import java.util.HashSet;
@@ -8,14 +10,21 @@ import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import hudson.Extension;
 
 @Extension
 public class CppcheckWarningParser extends WarningParser {
 
-    private final Pattern suppressionPattern = 
-            Pattern.compile("(?:(?<=//)\\s*cppcheck-suppress\\s[^\\n]*$)|(?:(?<=/\\*)\\s*cppcheck-suppress\\s.*?(?=\\*/))",
-            Pattern.DOTALL | Pattern.MULTILINE);
+    private static final String SUPPRESSION_MARKER = "cppcheck-suppress";
+    /** The suffixes of the marker, for suppressing other lines than the next */
+    private static final String[] MARKER_SUFFIXES = { "-begin", "-end", "-file", "-macro" };
+    private static final String RULE_ID_PREFIX = "misra-c2012-";
+
     private final Pattern guidelinePattern = Pattern.compile("misra-c2012-(\\d+\\.\\d+)");
     private final Pattern warningLinePattern = Pattern.compile("\\[([^:]*):(\\d+)\\][^\\[]*\\[misra-c2012-(\\d+.\\d+)\\]");
 
@@ -27,7 +36,9 @@ public class CppcheckWarningParser extends WarningParser {
             Violation violation = new Violation();
             violation.fileName = matcher.group(1);
             violation.lineNumber = Integer.parseInt(matcher.group(2));
-            violation.guidelineId = "Rule " + matcher.group(3);
+            violation.guidelineIndex = guidelineIndex("Rule ", line, matcher.start(3), matcher.end(3));
+            if (violation.guidelineIndex < 0)
+                violation.guidelineId = "Rule " + matcher.group(3);
             violations.add(violation);
         }
         return violations;
@@ -36,18 +47,231 @@ public class CppcheckWarningParser extends WarningParser {
     @Override
     protected List<String> findSuppressionComments(String fileContent) {
         List<String> comments = new ArrayList<String>();
-        Matcher matcher = suppressionPattern.matcher(fileContent);
-        while (matcher.find())
-            comments.add(matcher.group());
+        for (CommentSpan span : findSuppressionCommentSpans(fileContent))
+            comments.add(span.text);
         return comments;
     }
 
+    /**
+     * Suppression comments start with "cppcheck-suppress", possibly followed by
+     * one of "-begin", "-end", "-file" and "-macro", and then whitespace or a
+     * bracketed list of ids. There may be whitespace before the marker. The
+     * returned text is the whole comment text.
+     */
+    @Override
+    protected List<CommentSpan> findSuppressionCommentSpans(String fileContent) {
+        final List<CommentSpan> spans = new ArrayList<CommentSpan>();
+        CommentLexer.lex(fileContent, new CommentLexer.CommentVisitor() {
+            @Override
+            public void visitComment(CharSequence source, int start, int end, int lineNumber, boolean isBlockComment) {
+                if (markerEnd(source, CommentLexer.skipWhitespace(source, start, end), end) >= 0)
+                    spans.add(new CommentSpan(source.subSequence(start, end).toString(), start, end, lineNumber));
+            }
+        });
+        return spans;
+    }
+
+    /**
+     * @return The position after the marker and its suffix, or -1 if the text
+     *         does not start with a marker followed by whitespace or '['
+     */
+    private static int markerEnd(CharSequence text, int start, int end) {
+        if (!CommentLexer.startsWith(text, start, end, SUPPRESSION_MARKER))
+            return -1;
+        int markerEnd = start + SUPPRESSION_MARKER.length();
+        for (String suffix : MARKER_SUFFIXES) {
+            if (CommentLexer.startsWith(text, markerEnd, end, suffix)) {
+                markerEnd += suffix.length();
+                break;
+            }
+        }
+        if (markerEnd < end && (CommentLexer.isWhitespace(text.charAt(markerEnd)) || text.charAt(markerEnd) == '['))
+            return markerEnd;
+        return -1;
+    }
+
+    @Override
+    protected SuppressionScope suppressionScope(String comment) {
+        int start = CommentLexer.skipWhitespace(comment, 0, comment.length());
+        int markerEnd = markerEnd(comment, start, comment.length());
+        if (markerEnd < 0)
+            return SuppressionScope.LINE_AND_NEXT;
+        String suffix = comment.substring(start + SUPPRESSION_MARKER.length(), markerEnd);
+        if (suffix.equals("-begin"))
+            return SuppressionScope.BLOCK_BEGIN;
+        if (suffix.equals("-end"))
+            return SuppressionScope.BLOCK_END;
+        if (suffix.equals("-file"))
+            return SuppressionScope.FILE;
+        if (suffix.equals("-macro"))
+            return SuppressionScope.UNKNOWN; // The lines where the macro is used
+        return SuppressionScope.LINE_AND_NEXT;
+    }
+
+    @Override
+    public boolean supportsSuppressionsFile() {
+        return true;
+    }
+
+    /**
+     * Reads a line of a file given to cppcheck with --suppressions-list, i.e.
+     * "id", "id:file" or "id:file:line". Text after "//" or "#" is a comment,
+     * which is read for tags like the text after a suppression comment. Lines
+     * whose id is not a MISRA id, e.g. "unusedFunction" or "*", are skipped.
+     */
+    @Override
+    protected ExternalSuppression parseSuppressionsFileLine(String line) {
+        String tags = "";
+        int commentStart = line.indexOf("//");
+        if (line.indexOf('#') >= 0 && (commentStart < 0 || line.indexOf('#') < commentStart))
+            commentStart = line.indexOf('#');
+        if (commentStart >= 0) {
+            tags = line.substring(commentStart + (line.charAt(commentStart) == '#' ? 1 : 2));
+            line = line.substring(0, commentStart);
+        }
+        line = line.trim();
+        if (line.isEmpty())
+            return null;
+        String id = line;
+        String file = null;
+        int lineNumber = 0;
+        int colon = line.indexOf(':');
+        if (colon >= 0) {
+            id = line.substring(0, colon).trim();
+            file = line.substring(colon + 1).trim();
+            int lineColon = file.lastIndexOf(':');
+            if (lineColon >= 0 && file.substring(lineColon + 1).trim().matches("\\d+")) {
+                lineNumber = Integer.parseInt(file.substring(lineColon + 1).trim());
+                file = file.substring(0, lineColon).trim();
+            }
+            if (file.isEmpty())
+                file = null;
+        }
+        if (!id.startsWith("misra-"))
+            return null;
+        return new ExternalSuppression(SUPPRESSION_MARKER + " " + id + " ; " + tags, file, lineNumber);
+    }
+
+    @Override
+    protected String suppressionCommentMarker() {
+        return SUPPRESSION_MARKER;
+    }
+
+    @Override
+    protected String[] warningLineLiterals() {
+        return new String[] { "[misra-c2012-" };
+    }
+
+    /** Cppcheck's XML results (--xml) start with an XML declaration or the results element */
+    @Override
+    protected boolean isWarningsDocument(String head) {
+        String trimmed = head.startsWith("\uFEFF") ? head.substring(1).trim() : head.trim();
+        return trimmed.startsWith("<?xml") || trimmed.startsWith("<results");
+    }
+
+    /**
+     * Streams Cppcheck's XML results, version 2. Each &lt;error&gt; element with a
+     * "misra-c2012-X.Y" id is reported as a violation at its first &lt;location&gt;
+     * as soon as the element ends, so only one error is held in memory at a time.
+     */
+    @Override
+    protected void parseWarningsDocument(Reader reader) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        XMLStreamReader xml = null;
+        try {
+            xml = factory.createXMLStreamReader(reader);
+            Violation violation = null;
+            boolean hasLocation = false;
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String element = xml.getLocalName();
+                    if ("error".equals(element)) {
+                        violation = violationFromErrorId(xml.getAttributeValue(null, "id"));
+                        hasLocation = false;
+                    } else if ("location".equals(element) && violation != null && !hasLocation) {
+                        hasLocation = true;
+                        String file = xml.getAttributeValue(null, "file");
+                        if (file != null)
+                            violation.fileName = file;
+                        violation.lineNumber = parseLineNumber(xml.getAttributeValue(null, "line"));
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && "error".equals(xml.getLocalName())) {
+                    reportViolation(violation);
+                    violation = null;
+                }
+            }
+        } catch (XMLStreamException ex) {
+            throw new IOException("Could not read Cppcheck XML results: " + ex.getMessage(), ex);
+        } finally {
+            if (xml != null) {
+                try {
+                    xml.close();
+                } catch (XMLStreamException ex) {
+                    // Nothing more to read, and the reader is closed by the caller
+                }
+            }
+        }
+    }
+
+    /**
+     * @return A violation without location, or null if the id is not a MISRA rule
+     */
+    private Violation violationFromErrorId(String id) {
+        if (id == null || !id.startsWith(RULE_ID_PREFIX))
+            return null;
+        Matcher matcher = guidelinePattern.matcher(id);
+        if (!matcher.matches())
+            return null;
+        Violation violation = new Violation();
+        violation.guidelineIndex = guidelineIndex("Rule ", id, matcher.start(1), matcher.end(1));
+        if (violation.guidelineIndex < 0)
+            violation.guidelineId = "Rule " + matcher.group(1);
+        return violation;
+    }
+
+    private static int parseLineNumber(String line) {
+        try {
+            return line == null ? 0 : Integer.parseInt(line);
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * Reads the id after the marker, or the comma separated ids in brackets
+     * after it, as in "cppcheck-suppress[misra-c2012-5.2,misra-c2012-8.4]"
+     */
     @Override
     protected Set<String> getGuidelineIdsFromComment(String comment) {
         HashSet<String> ids = new HashSet<String>();
-        Matcher matcher = guidelinePattern.matcher(comment);
-        if (matcher.find())
-            ids.add("Rule " + matcher.group(1));
+        int start = comment.indexOf(SUPPRESSION_MARKER);
+        int markerEnd = start < 0 ? -1 : markerEnd(comment, start, comment.length());
+        if (markerEnd < 0) {
+            Matcher matcher = guidelinePattern.matcher(comment);
+            if (matcher.find())
+                ids.add("Rule " + matcher.group(1));
+            return ids;
+        }
+        int idStart = CommentLexer.skipWhitespace(comment, markerEnd, comment.length());
+        String idList;
+        if (idStart < comment.length() && comment.charAt(idStart) == '[') {
+            int idEnd = comment.indexOf(']', idStart);
+            idList = comment.substring(idStart + 1, idEnd < 0 ? comment.length() : idEnd);
+        } else {
+            int idEnd = idStart;
+            while (idEnd < comment.length() && !CommentLexer.isWhitespace(comment.charAt(idEnd))
+                    && comment.charAt(idEnd) != ';')
+                idEnd++;
+            idList = comment.substring(idStart, idEnd);
+        }
+        for (String id : idList.split(",")) {
+            Matcher matcher = guidelinePattern.matcher(id.trim());
+            if (matcher.lookingAt())
+                ids.add("Rule " + matcher.group(1));
+        }
         return ids;
     }
 
@@ -1,9 +1,11 @@
 package rortveiten.misra;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
-public class Guideline {
+public class Guideline implements Serializable {
+	private static final long serialVersionUID = 1L;
 	
 	public static enum Category {
 		MANDATORY("Mandatory"),
@@ -41,7 +43,8 @@ public class Guideline {
 		}
 	};
 	
-	public static class DeviationReference {
+	public static class DeviationReference implements Serializable {
+        private static final long serialVersionUID = 1L;
         private String reference;
         private String link;
         
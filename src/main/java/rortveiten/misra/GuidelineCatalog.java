@@ -0,0 +1,175 @@
+package rortveiten.misra;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import rortveiten.misra.Guideline.Category;
+import rortveiten.misra.WarningParser.MisraVersion;
+
+/**
+ * The guidelines of one MISRA version, with their categories and the PC-lint
+ * error codes that map to them, as read from the au-misra*.lnt files. A catalog
+ * is built the first time its MISRA version is used and is then shared by all
+ * parsers and builds. It cannot be modified; each build gets its own
+ * {@link Guideline} objects from {@link #createGuidelines()} to hold its
+ * statuses.
+ */
+public final class GuidelineCatalog {
+
+    private static final Pattern GUIDELINE_PATTERN = Pattern.compile(
+            "/\\*+ ((?:Rule|Dir) (?:\\d+-\\d+-\\d+|\\d+\\.\\d+|\\d+)) +\\(([Rr]eq|[Aa]dv|[Mm]and|doc)\\) +\\*");
+    private static final Pattern LINT_APPEND_PATTERN = Pattern
+            .compile("-append\\((\\d+),\\[MISRA (?:2004 |2012 |C\\+\\+ )?([^,\\]]+).*\\]\\)");
+
+    private static final Map<MisraVersion, GuidelineCatalog> catalogs = new EnumMap<MisraVersion, GuidelineCatalog>(
+            MisraVersion.class);
+
+    private final MisraVersion misraVersion;
+    private final List<String> ids;
+    private final List<Category> categories;
+    private final Map<Integer, List<String>> lintErrorMap;
+    /** Open addressing hash table of index + 1 for each id, 0 for empty slots */
+    private final int[] indexTable;
+
+    private GuidelineCatalog(MisraVersion misraVersion, String misraLintFileContent) {
+        this.misraVersion = misraVersion;
+        List<String> ids = new ArrayList<String>(228); // 228 is the maximum number of guidelines
+        List<Category> categories = new ArrayList<Category>(228);
+        Matcher matcher = GUIDELINE_PATTERN.matcher(misraLintFileContent);
+        while (matcher.find()) {
+            ids.add(matcher.group(1).replaceFirst("Dir ", "Directive "));
+            categories.add(Category.fromString(matcher.group(2)));
+        }
+        this.ids = Collections.unmodifiableList(ids);
+        this.categories = Collections.unmodifiableList(categories);
+
+        Map<Integer, List<String>> errorMap = new HashMap<Integer, List<String>>(200);
+        matcher = LINT_APPEND_PATTERN.matcher(misraLintFileContent);
+        while (matcher.find()) {
+            Integer errNo = Integer.decode(matcher.group(1));
+            List<String> associatedGuidelines = errorMap.get(errNo);
+            if (associatedGuidelines == null) {
+                associatedGuidelines = new ArrayList<String>(1);
+                errorMap.put(errNo, associatedGuidelines);
+            }
+            associatedGuidelines.add(matcher.group(2));
+        }
+        for (Map.Entry<Integer, List<String>> entry : errorMap.entrySet())
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        this.lintErrorMap = Collections.unmodifiableMap(errorMap);
+
+        indexTable = new int[Integer.highestOneBit(Math.max(ids.size(), 1)) * 4];
+        for (int i = 0; i < ids.size(); i++) {
+            int slot = ids.get(i).hashCode() & (indexTable.length - 1);
+            while (indexTable[slot] != 0)
+                slot = (slot + 1) & (indexTable.length - 1);
+            indexTable[slot] = i + 1;
+        }
+    }
+
+    /**
+     * @param misraVersion Version of MISRA guidelines
+     * @return The shared catalog for this version, built on first use
+     */
+    public static synchronized GuidelineCatalog get(MisraVersion misraVersion) {
+        GuidelineCatalog catalog = catalogs.get(misraVersion);
+        if (catalog == null) {
+            catalog = new GuidelineCatalog(misraVersion, WarningParser.getMisraLintFileContent(misraVersion));
+            catalogs.put(misraVersion, catalog);
+        }
+        return catalog;
+    }
+
+    public MisraVersion getMisraVersion() {
+        return misraVersion;
+    }
+
+    /**
+     * @return The guideline ids, e.g. "Rule 1.1" or "Directive 4.1", in the order
+     *         of the MISRA document
+     */
+    public List<String> getIds() {
+        return ids;
+    }
+
+    public Category getCategory(int index) {
+        return categories.get(index);
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * @param id A guideline id, e.g. "Rule 10.4"
+     * @return The index of the guideline in {@link #getIds()}, or -1 if there is no
+     *         such guideline
+     */
+    public int indexOf(String id) {
+        return indexOf("", id, 0, id.length());
+    }
+
+    /**
+     * Looks up the guideline whose id is the prefix followed by a part of a text,
+     * e.g. "Rule " and the "10.4" in a warning, without creating a new string.
+     *
+     * @param prefix Start of the id
+     * @param text   Text containing the rest of the id
+     * @param start  Offset of the rest of the id in text
+     * @param end    Offset just past the rest of the id in text
+     * @return The index of the guideline in {@link #getIds()}, or -1 if there is no
+     *         such guideline
+     */
+    public int indexOf(String prefix, CharSequence text, int start, int end) {
+        int hash = prefix.hashCode();
+        for (int i = start; i < end; i++)
+            hash = 31 * hash + text.charAt(i);
+        int slot = hash & (indexTable.length - 1);
+        while (indexTable[slot] != 0) {
+            int index = indexTable[slot] - 1;
+            if (idEquals(ids.get(index), prefix, text, start, end))
+                return index;
+            slot = (slot + 1) & (indexTable.length - 1);
+        }
+        return -1;
+    }
+
+    private static boolean idEquals(String id, String prefix, CharSequence text, int start, int end) {
+        if (id.length() != prefix.length() + end - start || !id.startsWith(prefix))
+            return false;
+        for (int i = start, j = prefix.length(); i < end; i++, j++) {
+            if (id.charAt(j) != text.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return New guidelines with the original categories and compliant status,
+     *         in catalog order. The caller is free to modify them.
+     */
+    public List<Guideline> createGuidelines() {
+        List<Guideline> guidelines = new ArrayList<Guideline>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Guideline guideline = new Guideline(ids.get(i));
+            guideline.setCategory(categories.get(i));
+            guidelines.add(guideline);
+        }
+        return guidelines;
+    }
+
+    /**
+     * @param errorCode A PC-lint error code
+     * @return The guidelines the error code is linked to, e.g. "Rule 10.4", or null
+     *         if the error code is not linked to any guideline
+     */
+    public List<String> guidelinesForLintError(int errorCode) {
+        return lintErrorMap.get(errorCode);
+    }
+}
@@ -0,0 +1,179 @@
+package rortveiten.misra;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import rortveiten.misra.WarningParser.CommentProperties;
+
+/**
+ * The suppression comments and the number of violations of each guideline in
+ * each file, as found by a build. A later build that is given the files changed
+ * since then only has to scan those files and read their warnings; the data of
+ * all other files is carried over from this state.
+ * <p>
+ * Paths are relative to the workspace and use '/' as separator. Violations
+ * whose file is not known are kept under the empty path and are never carried
+ * over.
+ * </p>
+ */
+public class IncrementalState {
+    private static final int MAGIC = 0x4d474953; // "MGIS"
+    private static final int FORMAT_VERSION = 3;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String fingerprint;
+    private final Map<String, List<CommentProperties>> comments = new LinkedHashMap<String, List<CommentProperties>>();
+    private final Map<String, Map<String, Integer>> violations = new HashMap<String, Map<String, Integer>>();
+
+    IncrementalState(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * @return A fingerprint of the tools whose data is kept, i.e. their classes,
+     *         tag patterns and MISRA version. A state can only be used by a build
+     *         with the same tools.
+     */
+    public static String fingerprint(List<WarningParser> tools) {
+        return SourceScanCache.fingerprint(tools, Charset.defaultCharset().name());
+    }
+
+    public final String getFingerprint() {
+        return fingerprint;
+    }
+
+    List<CommentProperties> getComments(String fileName) {
+        return comments.get(fileName);
+    }
+
+    synchronized void putComments(String fileName, List<CommentProperties> fileComments) {
+        comments.put(fileName, fileComments);
+    }
+
+    Map<String, Map<String, Integer>> getViolations() {
+        return violations;
+    }
+
+    synchronized void addViolations(String fileName, String guidelineId, int count) {
+        Map<String, Integer> counts = violations.get(fileName);
+        if (counts == null) {
+            counts = new HashMap<String, Integer>();
+            violations.put(fileName, counts);
+        }
+        Integer old = counts.get(guidelineId);
+        counts.put(guidelineId, old == null ? count : old + count);
+    }
+
+    /**
+     * Adds the violations of another state, e.g. of a parser that read some of
+     * the warnings files
+     */
+    synchronized void addViolationsFrom(IncrementalState other) {
+        for (Map.Entry<String, Map<String, Integer>> file : other.violations.entrySet())
+            for (Map.Entry<String, Integer> count : file.getValue().entrySet())
+                addViolations(file.getKey(), count.getKey(), count.getValue());
+    }
+
+    /**
+     * @param path          A path as found in a warning, source list or list of
+     *                      changed files
+     * @param workspaceRoot The absolute path of the workspace
+     * @return The path relative to the workspace with '/' as separator
+     */
+    public static String normalizePath(String path, String workspaceRoot) {
+        String normalized = path.replace('\\', '/');
+        String root = workspaceRoot.replace('\\', '/');
+        if (!root.isEmpty() && !root.endsWith("/"))
+            root += "/";
+        if (!root.isEmpty() && normalized.startsWith(root))
+            normalized = normalized.substring(root.length());
+        while (normalized.startsWith("./"))
+            normalized = normalized.substring(2);
+        return normalized;
+    }
+
+    /**
+     * @param paths         Paths as given by e.g. git diff --name-only
+     * @param workspaceRoot The absolute path of the workspace
+     * @return The normalized paths
+     */
+    public static Set<String> normalizePaths(Collection<String> paths, String workspaceRoot) {
+        Set<String> normalized = new HashSet<String>(paths.size() * 2);
+        for (String path : paths)
+            normalized.add(normalizePath(path.trim(), workspaceRoot));
+        return normalized;
+    }
+
+    /**
+     * Reads a state written by {@link #write(OutputStream)}. The stream is not
+     * closed.
+     *
+     * @return The state, or null if it was written by another version of the
+     *         plugin
+     * @throws IOException If the stream cannot be read or is corrupt
+     */
+    public static IncrementalState read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, BUFFER_SIZE));
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+            return null;
+        IncrementalState state = new IncrementalState(in.readUTF());
+        int fileCount = in.readInt();
+        for (int i = 0; i < fileCount; i++) {
+            String fileName = in.readUTF();
+            int commentCount = in.readInt();
+            List<CommentProperties> fileComments = new ArrayList<CommentProperties>(Math.min(commentCount, 1024));
+            for (int j = 0; j < commentCount; j++)
+                fileComments.add(SourceScanCache.readComment(in, fileName));
+            state.comments.put(fileName, fileComments);
+        }
+        fileCount = in.readInt();
+        for (int i = 0; i < fileCount; i++) {
+            String fileName = in.readUTF();
+            int guidelineCount = in.readInt();
+            for (int j = 0; j < guidelineCount; j++)
+                state.addViolations(fileName, in.readUTF(), in.readInt());
+        }
+        return state;
+    }
+
+    /**
+     * Writes the state to a stream. The stream is flushed, but not closed.
+     */
+    public synchronized void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(fingerprint);
+        out.writeInt(comments.size());
+        for (Map.Entry<String, List<CommentProperties>> file : comments.entrySet()) {
+            out.writeUTF(file.getKey());
+            out.writeInt(file.getValue().size());
+            for (CommentProperties comment : file.getValue())
+                SourceScanCache.writeComment(out, comment);
+        }
+        out.writeInt(violations.size());
+        for (Map.Entry<String, Map<String, Integer>> file : violations.entrySet()) {
+            out.writeUTF(file.getKey());
+            out.writeInt(file.getValue().size());
+            for (Map.Entry<String, Integer> count : file.getValue().entrySet()) {
+                out.writeUTF(count.getKey());
+                out.writeInt(count.getValue());
+            }
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,322 @@
+package rortveiten.misra;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Reads a JSON document one token at a time, so that documents far larger than
+ * the available memory can be processed. Only the current token is held in
+ * memory; objects and arrays the caller is not interested in are skipped with
+ * {@link #skipValue()}. Numbers are returned as strings.
+ */
+public class JsonPullParser {
+
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int pos = 0;
+    private int limit = 0;
+    private long offset = 0;
+    private int[] scopes = new int[32];
+    private int depth = 1;
+    private Token peeked;
+    private String peekedValue;
+    private final StringBuilder builder = new StringBuilder();
+
+    public JsonPullParser(Reader reader) {
+        this.reader = reader;
+        scopes[0] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * @return The type of the next token, without consuming it
+     * @throws IOException If reading fails or the JSON is malformed
+     */
+    public Token peek() throws IOException {
+        if (peeked == null)
+            peeked = readToken();
+        return peeked;
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        depth--;
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        depth--;
+    }
+
+    /**
+     * @return true if the current object or array has more elements
+     */
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        return peekedValue;
+    }
+
+    /**
+     * @return The next string or number
+     */
+    public String nextString() throws IOException {
+        Token token = peek();
+        if (token != Token.STRING && token != Token.NUMBER)
+            throw syntaxError("Expected a string but found " + token);
+        peeked = null;
+        return peekedValue;
+    }
+
+    /**
+     * @return The next number, or the next string parsed as an int
+     * @throws IOException If the value is not an int
+     */
+    public int nextInt() throws IOException {
+        String value = nextString();
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            throw syntaxError("Expected an int but found \"" + value + "\"");
+        }
+    }
+
+    /**
+     * Skips the next value, including everything inside it if it is an object or
+     * an array.
+     */
+    public void skipValue() throws IOException {
+        int count = 0;
+        do {
+            switch (peek()) {
+            case BEGIN_OBJECT:
+                beginObject();
+                count++;
+                break;
+            case BEGIN_ARRAY:
+                beginArray();
+                count++;
+                break;
+            case END_OBJECT:
+                endObject();
+                count--;
+                break;
+            case END_ARRAY:
+                endArray();
+                count--;
+                break;
+            case END_DOCUMENT:
+                throw syntaxError("Unexpected end of document");
+            default:
+                peeked = null;
+            }
+        } while (count > 0);
+    }
+
+    private void expect(Token token) throws IOException {
+        if (peek() != token)
+            throw syntaxError("Expected " + token + " but found " + peeked);
+        peeked = null;
+    }
+
+    private void push(int scope) {
+        if (depth == scopes.length)
+            scopes = Arrays.copyOf(scopes, depth * 2);
+        scopes[depth++] = scope;
+    }
+
+    private Token readToken() throws IOException {
+        int scope = scopes[depth - 1];
+        int c;
+        switch (scope) {
+        case EMPTY_ARRAY:
+        case NONEMPTY_ARRAY:
+            scopes[depth - 1] = NONEMPTY_ARRAY;
+            c = nextNonWhitespace();
+            if (c == ']')
+                return Token.END_ARRAY;
+            if (c == -1)
+                throw syntaxError("Unterminated array");
+            if (scope == NONEMPTY_ARRAY) {
+                if (c != ',')
+                    throw syntaxError("Expected ',' or ']'");
+            } else {
+                pos--;
+            }
+            break;
+        case EMPTY_OBJECT:
+        case NONEMPTY_OBJECT:
+            scopes[depth - 1] = DANGLING_NAME;
+            c = nextNonWhitespace();
+            if (c == '}')
+                return Token.END_OBJECT;
+            if (scope == NONEMPTY_OBJECT) {
+                if (c != ',')
+                    throw syntaxError("Expected ',' or '}'");
+                c = nextNonWhitespace();
+            }
+            if (c != '"')
+                throw syntaxError("Expected a name");
+            peekedValue = readString();
+            return Token.NAME;
+        case DANGLING_NAME:
+            scopes[depth - 1] = NONEMPTY_OBJECT;
+            if (nextNonWhitespace() != ':')
+                throw syntaxError("Expected ':'");
+            break;
+        case EMPTY_DOCUMENT:
+            scopes[depth - 1] = NONEMPTY_DOCUMENT;
+            break;
+        default:
+            if (nextNonWhitespace() != -1)
+                throw syntaxError("Expected end of document");
+            return Token.END_DOCUMENT;
+        }
+        return readValue();
+    }
+
+    private Token readValue() throws IOException {
+        int c = nextNonWhitespace();
+        switch (c) {
+        case '{':
+            return Token.BEGIN_OBJECT;
+        case '[':
+            return Token.BEGIN_ARRAY;
+        case '"':
+            peekedValue = readString();
+            return Token.STRING;
+        case -1:
+            throw syntaxError("Unexpected end of document");
+        default:
+            pos--;
+            String literal = readLiteral();
+            peekedValue = literal;
+            if (literal.equals("true") || literal.equals("false"))
+                return Token.BOOLEAN;
+            if (literal.equals("null"))
+                return Token.NULL;
+            if (!literal.isEmpty() && (literal.charAt(0) == '-' || Character.isDigit(literal.charAt(0))))
+                return Token.NUMBER;
+            throw syntaxError("Unexpected value \"" + literal + "\"");
+        }
+    }
+
+    /** Reads the rest of a string after the opening quote */
+    private String readString() throws IOException {
+        builder.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == '"')
+                return builder.toString();
+            if (c == -1)
+                throw syntaxError("Unterminated string");
+            if (c == '\\') {
+                c = read();
+                switch (c) {
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'u':
+                    int value = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(read(), 16);
+                        if (digit < 0)
+                            throw syntaxError("Malformed unicode escape");
+                        value = value * 16 + digit;
+                    }
+                    builder.append((char) value);
+                    break;
+                case -1:
+                    throw syntaxError("Unterminated string");
+                default:
+                    builder.append((char) c);
+                }
+            } else {
+                builder.append((char) c);
+            }
+        }
+    }
+
+    private String readLiteral() throws IOException {
+        builder.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == -1)
+                break;
+            if (c == ',' || c == '}' || c == ']' || c == ':' || isWhitespace(c)) {
+                pos--;
+                break;
+            }
+            builder.append((char) c);
+        }
+        return builder.toString();
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (isWhitespace(c));
+        return c;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\uFEFF';
+    }
+
+    /** Reads the next character, or returns -1 at the end of the document */
+    private int read() throws IOException {
+        if (pos == limit) {
+            offset += limit;
+            pos = 0;
+            limit = reader.read(buffer, 0, buffer.length);
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[pos++];
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException("Malformed JSON at character " + (offset + pos) + ": " + message);
+    }
+}
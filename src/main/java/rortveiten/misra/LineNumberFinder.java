@@ -1,66 +1,100 @@
 package rortveiten.misra;
 
+import java.util.Arrays;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /** Class for finding line numbers of text patterns contained within a longer text, typically the contents of a file */
 public class LineNumberFinder {
-    
+
+    private final String text;
     private int[] charNumberAtLineBreak;
     private Matcher matcher;
-    
+    private int position = 0;
+    private int lastStart = -1;
+    private int lastEnd = -1;
+
     public LineNumberFinder(String fullText) {
+        text = fullText;
         fillCharNumberAtLineBreak(fullText);
         matcher = Pattern.compile("").matcher(fullText);
     }
-    
+
     private void fillCharNumberAtLineBreak(String text) {
-        int n = numberOfEntries(text, '\n') + 1;
-        charNumberAtLineBreak = new int[n];
+        int[] lineBreaks = new int[16];
         int count = 0;
         for (int charNo = 0; charNo < text.length(); charNo++) {
             if (text.charAt(charNo) == '\n') {
-                charNumberAtLineBreak[count] = charNo;
+                if (count == lineBreaks.length - 1)
+                    lineBreaks = Arrays.copyOf(lineBreaks, lineBreaks.length * 2);
+                lineBreaks[count] = charNo;
                 count++;
-            }     
+            }
         }
-        charNumberAtLineBreak[n - 1] = text.length();
-    }
-
-    private static int numberOfEntries(String string, char match) {
-        int ret = 0;
-        for (char c : string.toCharArray()) {
-            if (c == match)
-                ret++;
-        }
-        return ret;
+        lineBreaks[count] = text.length();
+        charNumberAtLineBreak = Arrays.copyOf(lineBreaks, count + 1);
     }
 
     public int findNext(Pattern p) {
         matcher.usePattern(p);
-        if (!matcher.find())
-            return -1;        
-        return lineNumberAtCharNo(matcher.start());
+        if (position > text.length() || !matcher.find(position))
+            return -1;
+        return found(matcher.start(), matcher.end());
     }
-    
+
     public int findNext(String text) {
-        Pattern p = Pattern.compile(text, Pattern.LITERAL);
-        return findNext(p);
+        int start = this.text.indexOf(text, position);
+        if (start < 0)
+            return -1;
+        return found(start, start + text.length());
     }
 
-    private int lineNumberAtCharNo(int start) {
-        for (int i = 0; i < charNumberAtLineBreak.length; i++) {
-            if (start <= charNumberAtLineBreak[i])
-                return i + 1;
-        }
-        return -1;
+    private int found(int start, int end) {
+        lastStart = start;
+        lastEnd = end;
+        position = end > start ? end : end + 1;
+        return lineNumberAtCharNo(start);
+    }
+
+    /**
+     * @param charNo Offset into the text
+     * @return The line the offset is on, counting from 1, or -1 if the offset is
+     *         beyond the end of the text
+     */
+    public int lineNumberAtCharNo(int charNo) {
+        int i = Arrays.binarySearch(charNumberAtLineBreak, charNo);
+        if (i < 0)
+            i = -i - 1;
+        return i < charNumberAtLineBreak.length ? i + 1 : -1;
     }
-    
-    /** Returns the regex matcher so you can examine the previous match
-     * 
-     * @return the regex matcher used to find the previous text
+
+    /**
+     * Returns the regex matcher so you can examine the previous match of
+     * {@link #findNext(Pattern)}. Searches with {@link #findNext(String)} do not
+     * use the matcher and leave it as it was.
+     *
+     * @return the regex matcher used by the previous regex search
+     * @deprecated Use {@link #getStart()} and {@link #getEnd()}, which cover both
+     *             kinds of search
      */
+    @Deprecated
     public Matcher getMatcher() {
         return matcher;
     }
+
+    /**
+     * @return Offset of the start of the previous match, or -1 if nothing has been
+     *         found yet
+     */
+    public int getStart() {
+        return lastStart;
+    }
+
+    /**
+     * @return Offset just past the end of the previous match, or -1 if nothing has
+     *         been found yet
+     */
+    public int getEnd() {
+        return lastEnd;
+    }
 }
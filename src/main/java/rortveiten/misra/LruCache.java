@@ -0,0 +1,47 @@
+package rortveiten.misra;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A map holding at most a fixed number of entries, dropping the least recently
+ * used entry when a new one is added to a full cache. All methods are
+ * synchronized, so the cache can be shared by the threads scanning source
+ * files.
+ */
+class LruCache<K, V> {
+    private final Map<K, V> entries;
+
+    /**
+     * @param maxEntries The most entries kept
+     */
+    LruCache(final int maxEntries) {
+        entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return The value of the key, or null if it is not in the cache
+     */
+    synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    synchronized void put(K key, V value) {
+        entries.put(key, value);
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+}
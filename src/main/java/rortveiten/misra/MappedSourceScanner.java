@@ -0,0 +1,165 @@
+package rortveiten.misra;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds comments that start with given ASCII markers, e.g. "lint", in a source
+ * file without decoding the whole file. The file is read into a byte buffer, or
+ * memory mapped if it is large, the {@link CommentLexer} runs directly on the
+ * raw bytes, and only the comments starting with a marker are decoded. The
+ * markers of several tools are found in a single pass over the file. This works
+ * for every charset where the comment delimiters, line breaks and the markers
+ * are encoded as single ASCII bytes, such as UTF-8 and the ISO-8859 family.
+ */
+public class MappedSourceScanner {
+
+    /** A comment starting with a marker, including its delimiters */
+    public static class MarkedComment {
+        private final String text;
+        private final int lineNumber;
+        private final int markerIndex;
+
+        MarkedComment(String text, int lineNumber, int markerIndex) {
+            this.text = text;
+            this.lineNumber = lineNumber;
+            this.markerIndex = markerIndex;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return The line the comment starts on, counting from 1
+         */
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        /**
+         * @return The index of the marker the comment starts with. A comment
+         *         starting with several markers is returned once for each.
+         */
+        public int getMarkerIndex() {
+            return markerIndex;
+        }
+    }
+
+    /** Files up to this size are read rather than mapped */
+    private static final int MAX_READ_SIZE = 4 * 1024 * 1024;
+
+    private final String[] markers;
+    private final Charset charset;
+    private final int maxReadSize;
+
+    public MappedSourceScanner(String marker, Charset charset) {
+        this(Collections.singletonList(marker), charset);
+    }
+
+    public MappedSourceScanner(List<String> markers, Charset charset) {
+        this(markers, charset, MAX_READ_SIZE);
+    }
+
+    MappedSourceScanner(List<String> markers, Charset charset, int maxReadSize) {
+        this.markers = markers.toArray(new String[markers.size()]);
+        this.charset = charset;
+        this.maxReadSize = maxReadSize;
+    }
+
+    /**
+     * Returns all comments in the file starting with a marker. Files of up to
+     * a few megabytes are read into memory. Larger files are memory mapped, and
+     * Java only unmaps a file when the buffer is garbage collected, so until then
+     * such a file cannot be deleted or replaced on Windows.
+     *
+     * @param file The source file
+     * @return The marked comments, in the order they appear in the file
+     * @throws IOException If the file cannot be read or is too large to be mapped
+     */
+    public List<MarkedComment> scan(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("File too large to be scanned: " + file);
+            if (size > maxReadSize)
+                return scan(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Read until the buffer is full or the file ends
+            }
+            buffer.flip();
+            return scan(buffer);
+        }
+    }
+
+    public List<MarkedComment> scan(final ByteBuffer source) {
+        final List<MarkedComment> comments = new ArrayList<MarkedComment>();
+        CommentLexer.lex(new ByteCharSequence(source), new CommentLexer.CommentVisitor() {
+            @Override
+            public void visitComment(CharSequence text, int start, int end, int lineNumber, boolean isBlockComment) {
+                int textStart = CommentLexer.skipWhitespace(text, start, end);
+                String comment = null;
+                for (int i = 0; i < markers.length; i++) {
+                    if (!CommentLexer.startsWith(text, textStart, end, markers[i]))
+                        continue;
+                    if (comment == null)
+                        comment = decode(source, start - 2, isBlockComment ? end + 2 : end);
+                    comments.add(new MarkedComment(comment, lineNumber, i));
+                }
+            }
+        });
+        return comments;
+    }
+
+    private String decode(ByteBuffer source, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        ByteBuffer view = source.duplicate();
+        view.position(start);
+        view.get(bytes);
+        return new String(bytes, charset);
+    }
+
+    /**
+     * Lets the lexer read the raw bytes as characters. Each byte is read as the
+     * ISO-8859-1 character with the same value, which is exact for the ASCII
+     * characters the lexer and the marker check look at.
+     */
+    private static class ByteCharSequence implements CharSequence {
+        private final ByteBuffer bytes;
+
+        ByteCharSequence(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int length() {
+            return bytes.limit();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes.get(index) & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            StringBuilder builder = new StringBuilder(end - start);
+            for (int i = start; i < end; i++)
+                builder.append(charAt(i));
+            return builder;
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+    }
+}
@@ -1,10 +1,8 @@
 package rortveiten.misra;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -13,48 +11,157 @@ import hudson.Extension;
 
 @Extension
 public class PcLintWarningParser extends WarningParser {
+
+	private static final String MISRA_TAG = "[MISRA ";
+	private static final String[] MISRA_VERSION_PREFIXES = { "2004 ", "2012 ", "C++ " };
+	private static final String[] MISRA_CATEGORY_SUFFIXES = { ", advisory", ", required", ", mandatory" };
+	private static final String[] MESSAGE_TYPES = { "Note", "Info", "Error", "Warning" };
+	private static final Pattern FULL_PATTERN = Pattern.compile("(.*?)\\((\\d+)\\): (?:Note|Info|Error|Warning) (\\d+): [^\\[]*\\[MISRA (?:2004 |2012 |C\\+\\+ )?([^,\\]]*)(:?, advisory|, required|, mandatory)?\\]");
+	private static final Pattern MISRA_PATTERN = Pattern.compile("\\[MISRA (?:2004 |2012 |C\\+\\+ )?([^,\\]]*)(:?, advisory|, required|, mandatory)?\\]");
+	private static final Pattern SUPPRESSION_PATTERN = Pattern.compile("\\G[-!]e(?:sym\\(|func\\(|macro\\(|file\\(|template\\(|string\\(|call\\(|type\\()?(\\d+)(:?,[^\\)]*\\)\\s*|\\s*)");
 	
-	/** Maps PC-Lint errorcodes to Misra guidelines. One errorcode may be linked to multiple guidelines.  */
-	private Map<Integer, List<String>> errorMap;
+	/** Maps PC-Lint errorcodes to Misra guidelines. One errorcode may be linked to multiple guidelines. Shared between parsers. */
+	private GuidelineCatalog catalog;
 
 	
 	@Override
 	public void setMisraVersion(MisraVersion misraVersion)
 	{
-		String fileContent = getMisraLintFileContent(misraVersion);
-		Pattern appendPattern = Pattern.compile("-append\\((\\d+),\\[MISRA (?:2004 |2012 |C\\+\\+ )?([^,\\]]+).*\\]\\)");
-		errorMap = new HashMap<Integer, List<String>>(200);
+		catalog = GuidelineCatalog.get(misraVersion);
+	}
 
-		Matcher matcher = appendPattern.matcher(fileContent);
-		
-		while (matcher.find()) {
-			Integer errNo = Integer.decode(matcher.group(1));
-			List<String> associatedGuidelines = errorMap.get(errNo);
-			if (associatedGuidelines == null) {
-				associatedGuidelines = new ArrayList<String>();
-				errorMap.put(errNo, associatedGuidelines);
+	@Override
+	protected List<Violation> parseWarningLine(String line) {
+		List<Violation> ret = splitWarningLine(line);
+		return ret != null ? ret : parseWarningLineWithRegex(line);
+	}
+
+	/**
+	 * Fast path for lines in the usual format "file(line): Type NNN: text [MISRA ...]".
+	 * Finds the same violations as {@link #parseWarningLineWithRegex(String)} without
+	 * running a regex.
+	 *
+	 * @return The violations, or null if the line is not in the usual format
+	 */
+	List<Violation> splitWarningLine(String line) {
+		int close = line.indexOf("): ");
+		if (close < 0)
+			return null;
+		int open = close;
+		while (open > 0 && isDigit(line.charAt(open - 1)))
+			open--;
+		if (open == close || open == 0 || line.charAt(open - 1) != '(')
+			return null;
+		int lineNumber = parseInt(line, open, close);
+		int typeStart = close + 3;
+		int typeEnd = line.indexOf(' ', typeStart);
+		if (typeEnd < 0 || !isMessageType(line, typeStart, typeEnd))
+			return null;
+		int codeEnd = typeEnd + 1;
+		while (codeEnd < line.length() && isDigit(line.charAt(codeEnd)))
+			codeEnd++;
+		if (codeEnd == typeEnd + 1 || !line.startsWith(": ", codeEnd))
+			return null;
+		int bracket = line.indexOf('[', codeEnd + 2);
+		if (lineNumber < 0 || bracket < 0 || !line.startsWith(MISRA_TAG, bracket) || misraTagEnd(line, bracket) < 0)
+			return null;
+
+		String fileName = line.substring(0, open - 1);
+		List<Violation> ret = new ArrayList<Violation>(1);
+		int tag = line.indexOf(MISRA_TAG);
+		while (tag >= 0) {
+			int tagEnd = misraTagEnd(line, tag);
+			if (tagEnd < 0) {
+				tag = line.indexOf(MISRA_TAG, tag + 1);
+				continue;
+			}
+			int idStart = tag + MISRA_TAG.length();
+			for (String version : MISRA_VERSION_PREFIXES) {
+				if (line.startsWith(version, idStart)) {
+					idStart += version.length();
+					break;
+				}
 			}
-			associatedGuidelines.add(matcher.group(2));
+			int idEnd = idStart;
+			while (line.charAt(idEnd) != ',' && line.charAt(idEnd) != ']')
+				idEnd++;
+			Violation v = new Violation();
+			v.fileName = fileName;
+			v.lineNumber = lineNumber;
+			v.guidelineIndex = guidelineIndex("", line, idStart, idEnd);
+			if (v.guidelineIndex < 0)
+				v.guidelineId = line.substring(idStart, idEnd);
+			ret.add(v);
+			tag = line.indexOf(MISRA_TAG, tagEnd);
 		}
+		return ret;
 	}
 
-	@Override
-	protected List<Violation> parseWarningLine(String line) {
-		Pattern fullPattern = Pattern.compile("(.*?)\\((\\d+)\\): (?:Note|Info|Error|Warning) (\\d+): [^\\[]*\\[MISRA (?:2004 |2012 |C\\+\\+ )?([^,\\]]*)(:?, advisory|, required|, mandatory)?\\]");
-		Pattern misraPattern = Pattern.compile("\\[MISRA (?:2004 |2012 |C\\+\\+ )?([^,\\]]*)(:?, advisory|, required|, mandatory)?\\]");		
-		Matcher lineMatcher = fullPattern.matcher(line);
+	/**
+	 * @return Offset just past the "]" ending the MISRA tag starting at tagStart, or -1 if it
+	 *         is not a valid tag
+	 */
+	private static int misraTagEnd(String line, int tagStart) {
+		int i = tagStart + MISRA_TAG.length();
+		while (i < line.length() && line.charAt(i) != ',' && line.charAt(i) != ']')
+			i++;
+		if (i == line.length())
+			return -1;
+		if (line.charAt(i) == ',') {
+			int suffixEnd = -1;
+			for (String category : MISRA_CATEGORY_SUFFIXES) {
+				if (line.startsWith(category, i)) {
+					suffixEnd = i + category.length();
+					break;
+				}
+			}
+			if (suffixEnd < 0)
+				return -1;
+			i = suffixEnd;
+		}
+		return i < line.length() && line.charAt(i) == ']' ? i + 1 : -1;
+	}
+
+	private static boolean isMessageType(String line, int start, int end) {
+		for (String type : MESSAGE_TYPES) {
+			if (end - start == type.length() && line.startsWith(type, start))
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	/** @return The number, or -1 if it is too large for an int */
+	private static int parseInt(String text, int start, int end) {
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			value = value * 10 + text.charAt(i) - '0';
+			if (value > Integer.MAX_VALUE)
+				return -1;
+		}
+		return (int) value;
+	}
+
+	/** Parses any warning line with regular expressions. Used when the fast path does not recognize the line. */
+	List<Violation> parseWarningLineWithRegex(String line) {
+		Matcher lineMatcher = FULL_PATTERN.matcher(line);
 		List<Violation> ret = new ArrayList<Violation>();
 		if (lineMatcher.find())
 		{
 			String fileName = lineMatcher.group(1);
 			int lineNumber = Integer.parseInt(lineMatcher.group(2));
-			Matcher misraMatch = misraPattern.matcher(line);
+			Matcher misraMatch = MISRA_PATTERN.matcher(line);
 			while (misraMatch.find())
 			{
 				Violation v =  new Violation();
 				v.fileName = fileName;
 				v.lineNumber = lineNumber;
-				v.guidelineId = misraMatch.group(1);
+				v.guidelineIndex = guidelineIndex("", line, misraMatch.start(1), misraMatch.end(1));
+				if (v.guidelineIndex < 0)
+					v.guidelineId = misraMatch.group(1);
 				ret.add(v);
 			}
 		}
@@ -62,28 +169,63 @@ public class PcLintWarningParser extends WarningParser {
 	}
 
 	@Override
-	protected List<String> findSuppressionComments(String fileContent) {		
-		Pattern regex = Pattern.compile("//lint\\s*([^\n]*)$|/\\*lint\\s+(.*?)\\*/", Pattern.DOTALL | Pattern.MULTILINE);
+	protected List<String> findSuppressionComments(String fileContent) {
 		List<String> comments = new ArrayList<String>();
-		Matcher matcher = regex.matcher(fileContent);
-		while (matcher.find())
-		{
-			if (matcher.group(1) != null)//First group is single line comment "//"
-				comments.add(matcher.group(1));
-			else
-				comments.add(matcher.group(2));//Second group is multiline comment
-		}		
+		for (CommentSpan span : findSuppressionCommentSpans(fileContent))
+			comments.add(span.text);
 		return comments;
 	}
-	
+
+	/**
+	 * Suppression comments start with "lint" right after the comment opener. The
+	 * returned text is the rest of the comment, without leading whitespace.
+	 * Block comments need whitespace after "lint".
+	 */
+	@Override
+	protected List<CommentSpan> findSuppressionCommentSpans(String fileContent) {
+		final List<CommentSpan> spans = new ArrayList<CommentSpan>();
+		CommentLexer.lex(fileContent, new CommentLexer.CommentVisitor() {
+			@Override
+			public void visitComment(CharSequence source, int start, int end, int lineNumber, boolean isBlockComment) {
+				if (!CommentLexer.startsWith(source, start, end, "lint"))
+					return;
+				int textStart = CommentLexer.skipWhitespace(source, start + 4, end);
+				if (isBlockComment && textStart == start + 4)
+					return;
+				spans.add(new CommentSpan(source.subSequence(textStart, end).toString(), textStart, end,
+						lineNumber + CommentLexer.countLineBreaks(source, start, textStart)));
+			}
+		});
+		return spans;
+	}
+
+	/**
+	 * A "!e" option only applies to the line of the comment, while options such
+	 * as "-e" apply from the comment to the end of the file. Options restored by
+	 * "-restore" are assumed to apply to the end of the file as well.
+	 */
+	@Override
+	protected SuppressionScope suppressionScope(String comment) {
+		return comment.startsWith("!e") ? SuppressionScope.LINE : SuppressionScope.REST_OF_FILE;
+	}
+
+	@Override
+	protected String suppressionCommentMarker() {
+		return "lint";
+	}
+
+	@Override
+	protected String[] warningLineLiterals() {
+		return new String[] { MISRA_TAG };
+	}
 
 	@Override
 	protected Set<String> getGuidelineIdsFromComment(String comment) {
-		Matcher matcher = Pattern.compile("\\G[-!]e(?:sym\\(|func\\(|macro\\(|file\\(|template\\(|string\\(|call\\(|type\\()?(\\d+)(:?,[^\\)]*\\)\\s*|\\s*)").matcher(comment);
+		Matcher matcher = SUPPRESSION_PATTERN.matcher(comment);
 		Set<String> ret = new HashSet<String>();
 		while (matcher.find()) {
 			Integer errNo = Integer.decode(matcher.group(1));
-			List<String> reqIds = errorMap.get(errNo);
+			List<String> reqIds = catalog.guidelinesForLintError(errNo);
 			if (reqIds == null)
 				return null;
 			ret.addAll(reqIds);
@@ -0,0 +1,357 @@
+package rortveiten.misra;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import rortveiten.misra.JsonPullParser.Token;
+
+/**
+ * Reads the results of a SARIF 2.1 log as a stream. Only runs[].tool.driver.rules[].id
+ * and the rule, file and line of each result in runs[].results[] are read;
+ * everything else is skipped, so memory use does not depend on the size of the
+ * log. Results that are not failures, i.e. whose kind is given and is not
+ * "fail", and results suppressed e.g. in the source are left out.
+ * <p>
+ * The uri of each location is turned into a file path: the file: scheme is
+ * removed, escaped characters are decoded, and relative uris are resolved
+ * against runs[].originalUriBaseIds when the run gives their base before its
+ * results. Results are never held back to wait for a base given later, or not
+ * at all as is common for %SRCROOT%; their uris are reported as relative paths,
+ * which are relative to the checkout in practice.
+ */
+public class SarifReader {
+
+    /** Receives each result as soon as it has been read */
+    public interface ResultHandler {
+        /**
+         * @param ruleId     Id of the rule the result is about, or null if unknown
+         * @param fileName   The path of the first location of the result, or an
+         *                   empty string if it has no location
+         * @param lineNumber The start line of the first location, or 0 if unknown
+         */
+        void result(String ruleId, String fileName, int lineNumber);
+    }
+
+    private final JsonPullParser json;
+    private final ResultHandler handler;
+    /** Ids of the rules of the current run, for results that refer to a rule by index */
+    private final List<String> ruleIds = new ArrayList<String>();
+    /** The uri and uriBaseId of each base of the current run */
+    private final Map<String, String[]> uriBaseIds = new HashMap<String, String[]>();
+
+    private static final Pattern URI_SCHEME = Pattern.compile("^[A-Za-z][A-Za-z0-9+.-]*:");
+    /** The most bases a uri may be resolved through, in case they refer to each other */
+    private static final int MAX_BASE_DEPTH = 8;
+
+    private SarifReader(Reader reader, ResultHandler handler) {
+        this.json = new JsonPullParser(reader);
+        this.handler = handler;
+    }
+
+    /**
+     * @param head The first characters of a file
+     * @return true if the file looks like a SARIF log
+     */
+    public static boolean isSarif(String head) {
+        String trimmed = head.trim();
+        if (trimmed.startsWith("\uFEFF"))
+            trimmed = trimmed.substring(1).trim();
+        return trimmed.startsWith("{") && (trimmed.contains("sarif") || trimmed.contains("\"runs\""));
+    }
+
+    /**
+     * Reads all results of a SARIF log and passes them to the handler.
+     *
+     * @param reader  Reader giving the SARIF log. It is not closed.
+     * @param handler Receives the results
+     * @throws IOException If reading fails or the log is not valid JSON
+     */
+    public static void read(Reader reader, ResultHandler handler) throws IOException {
+        new SarifReader(reader, handler).readLog();
+    }
+
+    private void readLog() throws IOException {
+        json.beginObject();
+        while (json.hasNext()) {
+            if (json.nextName().equals("runs") && json.peek() == Token.BEGIN_ARRAY) {
+                json.beginArray();
+                while (json.hasNext())
+                    readRun();
+                json.endArray();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+    }
+
+    private void readRun() throws IOException {
+        if (json.peek() != Token.BEGIN_OBJECT) {
+            json.skipValue();
+            return;
+        }
+        ruleIds.clear();
+        uriBaseIds.clear();
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (name.equals("tool") && json.peek() == Token.BEGIN_OBJECT) {
+                readTool();
+            } else if (name.equals("originalUriBaseIds") && json.peek() == Token.BEGIN_OBJECT) {
+                json.beginObject();
+                while (json.hasNext()) {
+                    String baseId = json.nextName();
+                    if (json.peek() == Token.BEGIN_OBJECT)
+                        uriBaseIds.put(baseId, readArtifactLocation());
+                    else
+                        json.skipValue();
+                }
+                json.endObject();
+            } else if (name.equals("results") && json.peek() == Token.BEGIN_ARRAY) {
+                json.beginArray();
+                while (json.hasNext())
+                    readResult();
+                json.endArray();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+    }
+
+    private void readTool() throws IOException {
+        json.beginObject();
+        while (json.hasNext()) {
+            if (json.nextName().equals("driver") && json.peek() == Token.BEGIN_OBJECT) {
+                json.beginObject();
+                while (json.hasNext()) {
+                    if (json.nextName().equals("rules") && json.peek() == Token.BEGIN_ARRAY) {
+                        json.beginArray();
+                        while (json.hasNext())
+                            ruleIds.add(readId());
+                        json.endArray();
+                    } else {
+                        json.skipValue();
+                    }
+                }
+                json.endObject();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+    }
+
+    /** Reads the "id" of a reportingDescriptor or reportingDescriptorReference */
+    private String readId() throws IOException {
+        if (json.peek() != Token.BEGIN_OBJECT) {
+            json.skipValue();
+            return null;
+        }
+        String id = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            if (json.nextName().equals("id") && json.peek() == Token.STRING)
+                id = json.nextString();
+            else
+                json.skipValue();
+        }
+        json.endObject();
+        return id;
+    }
+
+    private void readResult() throws IOException {
+        if (json.peek() != Token.BEGIN_OBJECT) {
+            json.skipValue();
+            return;
+        }
+        String ruleId = null;
+        int ruleIndex = -1;
+        String uri = "";
+        String uriBaseId = null;
+        int lineNumber = 0;
+        boolean hasLocation = false;
+        boolean isFailure = true;
+        boolean isSuppressed = false;
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (name.equals("ruleId") && json.peek() == Token.STRING) {
+                ruleId = json.nextString();
+            } else if (name.equals("ruleIndex") && json.peek() == Token.NUMBER) {
+                ruleIndex = json.nextInt();
+            } else if (name.equals("rule") && json.peek() == Token.BEGIN_OBJECT && ruleId == null) {
+                ruleId = readId();
+            } else if (name.equals("kind") && json.peek() == Token.STRING) {
+                isFailure = json.nextString().equals("fail");
+            } else if (name.equals("suppressions") && json.peek() == Token.BEGIN_ARRAY) {
+                json.beginArray();
+                while (json.hasNext()) {
+                    if (json.peek() == Token.BEGIN_OBJECT)
+                        isSuppressed |= !readMember("status", "accepted").equals("rejected");
+                    else
+                        json.skipValue();
+                }
+                json.endArray();
+            } else if (name.equals("locations") && json.peek() == Token.BEGIN_ARRAY) {
+                json.beginArray();
+                while (json.hasNext()) {
+                    if (!hasLocation && json.peek() == Token.BEGIN_OBJECT) {
+                        hasLocation = true;
+                        String[] location = readLocation();
+                        uri = location[0];
+                        uriBaseId = location[1];
+                        lineNumber = parseLineNumber(location[2]);
+                    } else {
+                        json.skipValue();
+                    }
+                }
+                json.endArray();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+        if (!isFailure || isSuppressed)
+            return;
+        if (ruleId == null && ruleIndex >= 0 && ruleIndex < ruleIds.size())
+            ruleId = ruleIds.get(ruleIndex);
+        handler.result(ruleId, resolve(uri, uriBaseId, 0), lineNumber);
+    }
+
+    /**
+     * @return The uri, uriBaseId and start line of a location. The uri and line
+     *         may be empty, and the uriBaseId null.
+     */
+    private String[] readLocation() throws IOException {
+        String[] location = { "", null, "" };
+        json.beginObject();
+        while (json.hasNext()) {
+            if (json.nextName().equals("physicalLocation") && json.peek() == Token.BEGIN_OBJECT) {
+                json.beginObject();
+                while (json.hasNext()) {
+                    String name = json.nextName();
+                    if (name.equals("artifactLocation") && json.peek() == Token.BEGIN_OBJECT) {
+                        String[] artifact = readArtifactLocation();
+                        location[0] = artifact[0] == null ? "" : artifact[0];
+                        location[1] = artifact[1];
+                    } else if (name.equals("region") && json.peek() == Token.BEGIN_OBJECT) {
+                        location[2] = readMember("startLine", location[2]);
+                    } else {
+                        json.skipValue();
+                    }
+                }
+                json.endObject();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+        return location;
+    }
+
+    /** @return The uri and uriBaseId of an artifactLocation, each of which may be null */
+    private String[] readArtifactLocation() throws IOException {
+        String[] artifact = new String[2];
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (name.equals("uri") && json.peek() == Token.STRING)
+                artifact[0] = json.nextString();
+            else if (name.equals("uriBaseId") && json.peek() == Token.STRING)
+                artifact[1] = json.nextString();
+            else
+                json.skipValue();
+        }
+        json.endObject();
+        return artifact;
+    }
+
+    /**
+     * @return The path of a uri, resolved against its base if it is relative and
+     *         the base is known
+     */
+    private String resolve(String uri, String uriBaseId, int depth) {
+        String path = toPath(uri);
+        if (uriBaseId == null || depth >= MAX_BASE_DEPTH || URI_SCHEME.matcher(uri).find() || uri.startsWith("/"))
+            return path;
+        String[] base = uriBaseIds.get(uriBaseId);
+        if (base == null || base[0] == null)
+            return path;
+        String basePath = resolve(base[0], base[1], depth + 1);
+        if (!basePath.isEmpty() && !basePath.endsWith("/"))
+            basePath += "/";
+        return basePath + path;
+    }
+
+    /**
+     * Removes the file: scheme and decodes escaped characters, e.g.
+     * "file:///C:/ws/a%20b.c" becomes "C:/ws/a b.c". Uris of other schemes are
+     * returned unchanged.
+     */
+    static String toPath(String uri) {
+        String path = uri;
+        if (path.regionMatches(true, 0, "file:", 0, 5)) {
+            path = path.substring(5);
+            if (path.startsWith("//localhost/"))
+                path = path.substring(11);
+            else if (path.startsWith("///"))
+                path = path.substring(2);
+            if (path.length() > 2 && path.charAt(0) == '/' && Character.isLetter(path.charAt(1))
+                    && path.charAt(2) == ':')
+                path = path.substring(1);
+        } else if (URI_SCHEME.matcher(path).find() && !(path.length() > 1 && path.charAt(1) == ':')) {
+            return uri;
+        }
+        return path.indexOf('%') < 0 ? path : decode(path);
+    }
+
+    /** Decodes the %XX escapes of a uri as UTF-8 */
+    private static String decode(String text) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int high = i + 2 < text.length() ? Character.digit(text.charAt(i + 1), 16) : -1;
+            int low = high >= 0 ? Character.digit(text.charAt(i + 2), 16) : -1;
+            if (c == '%' && low >= 0) {
+                bytes.write(high * 16 + low);
+                i += 2;
+            } else {
+                byte[] encoded = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
+                bytes.write(encoded, 0, encoded.length);
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /** Reads an object and returns the string or number value of one of its members */
+    private String readMember(String member, String defaultValue) throws IOException {
+        String value = defaultValue;
+        json.beginObject();
+        while (json.hasNext()) {
+            Token token;
+            if (json.nextName().equals(member)
+                    && ((token = json.peek()) == Token.STRING || token == Token.NUMBER))
+                value = json.nextString();
+            else
+                json.skipValue();
+        }
+        json.endObject();
+        return value;
+    }
+
+    private static int parseLineNumber(String line) {
+        try {
+            return line.isEmpty() ? 0 : Integer.parseInt(line);
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+}
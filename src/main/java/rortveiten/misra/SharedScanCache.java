@@ -0,0 +1,203 @@
+package rortveiten.misra;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import rortveiten.misra.WarningParser.CommentProperties;
+
+/**
+ * The suppression comments found in source files, keyed by a hash of the file
+ * content and of the tools and tag patterns used to find them. Unlike
+ * {@link SourceScanCache} it does not depend on the path of the file, so one
+ * directory can be shared by all jobs and workspaces on a machine.
+ * <p>
+ * Each entry is a file in the directory. Entries are written to a temporary
+ * file and renamed, so concurrent builds never see a partly written entry.
+ * Reading an entry updates its modification time, and when the directory grows
+ * beyond its size limit, the entries that were least recently used are
+ * deleted.
+ * </p>
+ */
+class SharedScanCache {
+    private static final int MAGIC = 0x4d475353; // "MGSS"
+    private static final int FORMAT_VERSION = 3;
+    private static final String ENTRY_SUFFIX = ".scan";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int BUFFER_SIZE = 8 * 1024;
+    /** Temporary files this old were left behind by a build that died */
+    private static final long STALE_TEMP_FILE_MILLIS = 3600 * 1000;
+    /** Eviction deletes entries until the directory is this part of its limit */
+    private static final double EVICTION_TARGET = 0.9;
+
+    private final File directory;
+    private final long maxBytes;
+    private final byte[] fingerprint;
+    private int hits;
+
+    /**
+     * @param directory   The directory of the cache. It is created if it does
+     *                    not exist.
+     * @param maxBytes    The most disk space the entries may use
+     * @param fingerprint What the comments depend on besides the file content,
+     *                    see {@link SourceScanCache#fingerprint(List, String)}
+     */
+    SharedScanCache(File directory, long maxBytes, String fingerprint) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.fingerprint = fingerprint.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The key of the entry for a file with the given content
+     */
+    String key(byte[] content) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        digest.update(fingerprint);
+        digest.update((byte) 0);
+        byte[] hash = digest.digest(content);
+        StringBuilder key = new StringBuilder(hash.length * 2);
+        for (byte b : hash)
+            key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        return key.toString();
+    }
+
+    /**
+     * @param key      The key of the file content
+     * @param fileName The file the comments are returned for
+     * @return The comments of the entry, or null if there is no such entry or it
+     *         cannot be read
+     */
+    List<CommentProperties> get(String key, String fileName) {
+        File entry = entryFile(key);
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(entry), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+                return null;
+            int commentCount = in.readInt();
+            List<CommentProperties> comments = new ArrayList<CommentProperties>(Math.min(commentCount, 1024));
+            for (int i = 0; i < commentCount; i++)
+                comments.add(SourceScanCache.readComment(in, fileName));
+            entry.setLastModified(System.currentTimeMillis());
+            synchronized (this) {
+                hits++;
+            }
+            return comments;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Adds an entry, unless the cache directory cannot be written to
+     */
+    void put(String key, List<CommentProperties> comments) {
+        File entry = entryFile(key);
+        File dir = entry.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory())
+            return;
+        File temp = null;
+        try {
+            temp = File.createTempFile(key, TEMP_SUFFIX, dir);
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(comments.size());
+                for (CommentProperties comment : comments)
+                    SourceScanCache.writeComment(out, comment);
+            }
+            try {
+                Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            if (temp != null)
+                temp.delete();
+        }
+    }
+
+    synchronized int getHits() {
+        return hits;
+    }
+
+    /**
+     * Deletes the least recently used entries if the entries use more than the
+     * size limit, and temporary files left behind by builds that died.
+     *
+     * @return The number of entries deleted
+     */
+    int evict() {
+        List<File> entries = new ArrayList<File>();
+        long totalBytes = 0;
+        long now = System.currentTimeMillis();
+        File[] dirs = directory.listFiles();
+        if (dirs == null)
+            return 0;
+        for (File dir : dirs) {
+            File[] files = dir.listFiles();
+            if (files == null)
+                continue;
+            for (File file : files) {
+                if (file.getName().endsWith(ENTRY_SUFFIX)) {
+                    entries.add(file);
+                    totalBytes += file.length();
+                } else if (file.getName().endsWith(TEMP_SUFFIX)
+                        && now - file.lastModified() > STALE_TEMP_FILE_MILLIS) {
+                    file.delete();
+                }
+            }
+        }
+        if (totalBytes <= maxBytes)
+            return 0;
+        final long[] lastUsed = new long[entries.size()];
+        Integer[] order = new Integer[entries.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            lastUsed[i] = entries.get(i).lastModified();
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(lastUsed[a], lastUsed[b]);
+            }
+        });
+        long target = (long) (maxBytes * EVICTION_TARGET);
+        int deleted = 0;
+        for (int i = 0; i < order.length && totalBytes > target; i++) {
+            File entry = entries.get(order[i]);
+            long length = entry.length();
+            if (entry.delete()) {
+                totalBytes -= length;
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    /** Entries are spread over 256 subdirectories named by the first byte of the key */
+    File entryFile(String key) {
+        return new File(new File(directory, key.substring(0, 2)), key + ENTRY_SUFFIX);
+    }
+}
@@ -0,0 +1,154 @@
+package rortveiten.misra;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the source files in a directory tree that match Ant-style include
+ * patterns such as "src/**&#47;*.c", and none of the exclude patterns. The tree
+ * is walked once, directories matching an exclude pattern ending in "/**" are
+ * not entered at all, and only the relative paths of the matching files are
+ * kept.
+ */
+public class SourceFileFinder {
+    /** Version control directories, which are never searched */
+    private static final String DEFAULT_EXCLUDES = "**/.git/**,**/.svn/**,**/.hg/**,**/CVS/**";
+
+    private final List<Pattern> includes;
+    private final List<Pattern> excludes;
+    /** Directories of the exclude patterns ending in "/**" */
+    private final List<Pattern> excludedDirectories;
+
+    /**
+     * @param includes Comma or whitespace separated Ant-style patterns of the
+     *                 files to find, relative to the root
+     * @param excludes Patterns of files not to find, or null
+     */
+    public SourceFileFinder(String includes, String excludes) {
+        this.includes = compile(includes);
+        String allExcludes = excludes == null || excludes.trim().isEmpty() ? DEFAULT_EXCLUDES
+                : excludes + "," + DEFAULT_EXCLUDES;
+        this.excludes = compile(allExcludes);
+        this.excludedDirectories = new ArrayList<Pattern>();
+        for (String pattern : split(allExcludes))
+            if (pattern.endsWith("/**"))
+                excludedDirectories.add(Pattern.compile(toRegex(pattern.substring(0, pattern.length() - 3))));
+    }
+
+    /**
+     * @param root The directory to search
+     * @return The paths of the matching files relative to root, with '/' as
+     *         separator, sorted. The strings are interned.
+     * @throws IOException If the tree cannot be walked
+     */
+    public List<String> find(File root) throws IOException {
+        final Path rootPath = root.toPath();
+        final List<String> files = new ArrayList<String>();
+        final StringBuilder relative = new StringBuilder();
+        Files.walkFileTree(rootPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (dir.equals(rootPath))
+                    return FileVisitResult.CONTINUE;
+                return matchesAny(excludedDirectories, relativePath(dir)) ? FileVisitResult.SKIP_SUBTREE
+                        : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                String path = relativePath(file);
+                if (matchesAny(includes, path) && !matchesAny(excludes, path))
+                    files.add(path.intern());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException ex) {
+                return FileVisitResult.CONTINUE;
+            }
+
+            private String relativePath(Path path) {
+                relative.setLength(0);
+                for (Path name : rootPath.relativize(path)) {
+                    if (relative.length() > 0)
+                        relative.append('/');
+                    relative.append(name.toString());
+                }
+                return relative.toString();
+            }
+        });
+        Collections.sort(files);
+        return files;
+    }
+
+    private static boolean matchesAny(List<Pattern> patterns, String path) {
+        for (Pattern pattern : patterns)
+            if (pattern.matcher(path).matches())
+                return true;
+        return false;
+    }
+
+    private static List<String> split(String patterns) {
+        List<String> ret = new ArrayList<String>();
+        if (patterns == null)
+            return ret;
+        for (String pattern : patterns.split("[,\\s]+")) {
+            pattern = pattern.replace('\\', '/');
+            while (pattern.startsWith("./"))
+                pattern = pattern.substring(2);
+            if (pattern.endsWith("/"))
+                pattern += "**";
+            if (!pattern.isEmpty())
+                ret.add(pattern);
+        }
+        return ret;
+    }
+
+    private static List<Pattern> compile(String patterns) {
+        List<Pattern> ret = new ArrayList<Pattern>();
+        for (String pattern : split(patterns))
+            ret.add(Pattern.compile(toRegex(pattern)));
+        return ret;
+    }
+
+    /**
+     * Converts an Ant-style pattern to a regular expression: "**" matches any
+     * number of directories, "*" any part of a name and "?" a single character
+     * of a name.
+     */
+    static String toRegex(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        String[] segments = pattern.split("/");
+        for (int i = 0; i < segments.length; i++) {
+            boolean last = i == segments.length - 1;
+            String segment = segments[i];
+            if (segment.equals("**")) {
+                regex.append(last ? ".*" : "(?:.*/)?");
+                continue;
+            }
+            for (int j = 0; j < segment.length(); j++) {
+                char c = segment.charAt(j);
+                if (c == '*')
+                    regex.append("[^/]*");
+                else if (c == '?')
+                    regex.append("[^/]");
+                else if (Character.isLetterOrDigit(c))
+                    regex.append(c);
+                else
+                    regex.append('\\').append(c);
+            }
+            if (!last)
+                regex.append('/');
+        }
+        return regex.toString();
+    }
+}
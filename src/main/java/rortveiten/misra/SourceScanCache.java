@@ -0,0 +1,223 @@
+package rortveiten.misra;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import rortveiten.misra.WarningParser.CommentProperties;
+import rortveiten.misra.WarningParser.Suppression;
+
+/**
+ * The suppression comments found in each source file by an earlier scan, keyed
+ * by the path, size and modification time of the file. A file whose size and
+ * modification time are unchanged does not have to be read again.
+ * <p>
+ * The cache also stores a fingerprint of everything else the comments depend
+ * on, i.e. the tools, their tag patterns and the MISRA version. A cache with
+ * another fingerprint is treated as empty.
+ * </p>
+ */
+class SourceScanCache {
+    private static final int MAGIC = 0x4d475343; // "MGSC"
+    private static final int FORMAT_VERSION = 3;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * Files modified this close to the start of the scan are not cached, since
+     * they could be modified again without their modification time changing
+     */
+    private static final long RACY_INTERVAL_MILLIS = 2000;
+    private static final int MAX_STRING_LENGTH = 16 * 1024 * 1024;
+
+    private static class Entry {
+        final long size;
+        final long lastModified;
+        final List<CommentProperties> comments;
+
+        Entry(long size, long lastModified, List<CommentProperties> comments) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.comments = comments;
+        }
+    }
+
+    private final String fingerprint;
+    private final long scanStart;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private int hits;
+
+    SourceScanCache(String fingerprint) {
+        this.fingerprint = fingerprint;
+        this.scanStart = System.currentTimeMillis();
+    }
+
+    /**
+     * @return The comments of the file if its size and modification time are the
+     *         same as when it was cached, otherwise null
+     */
+    List<CommentProperties> get(String fileName, long size, long lastModified) {
+        Entry entry = entries.get(fileName);
+        if (entry == null || entry.size != size || entry.lastModified != lastModified)
+            return null;
+        synchronized (this) {
+            hits++;
+        }
+        return entry.comments;
+    }
+
+    void put(String fileName, long size, long lastModified, List<CommentProperties> comments) {
+        if (lastModified <= 0 || lastModified >= scanStart - RACY_INTERVAL_MILLIS)
+            entries.remove(fileName);
+        else
+            entries.put(fileName, new Entry(size, lastModified, comments));
+    }
+
+    /** Removes the files that are not in the given collection */
+    void retainAll(Collection<String> fileNames) {
+        entries.keySet().retainAll(new HashSet<String>(fileNames));
+    }
+
+    synchronized int getHits() {
+        return hits;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Reads a cache written by {@link #write(OutputStream)}. The stream is not
+     * closed.
+     *
+     * @return The cache, or an empty cache if it was written with another
+     *         fingerprint or format
+     * @throws IOException If the stream cannot be read or is corrupt
+     */
+    static SourceScanCache read(InputStream stream, String fingerprint) throws IOException {
+        SourceScanCache cache = new SourceScanCache(fingerprint);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, BUFFER_SIZE));
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !fingerprint.equals(readString(in)))
+            return cache;
+        int fileCount = in.readInt();
+        for (int i = 0; i < fileCount; i++) {
+            String fileName = readString(in);
+            long size = in.readLong();
+            long lastModified = in.readLong();
+            int commentCount = in.readInt();
+            List<CommentProperties> comments = new ArrayList<CommentProperties>(commentCount);
+            for (int j = 0; j < commentCount; j++)
+                comments.add(readComment(in, fileName));
+            cache.entries.put(fileName, new Entry(size, lastModified, comments));
+        }
+        return cache;
+    }
+
+    /**
+     * Writes the cache to a stream. The stream is flushed, but not closed.
+     */
+    void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        writeString(out, fingerprint);
+        Map<String, Entry> snapshot = new HashMap<String, Entry>(entries);
+        out.writeInt(snapshot.size());
+        for (Map.Entry<String, Entry> file : snapshot.entrySet()) {
+            Entry entry = file.getValue();
+            writeString(out, file.getKey());
+            out.writeLong(entry.size);
+            out.writeLong(entry.lastModified);
+            out.writeInt(entry.comments.size());
+            for (CommentProperties comment : entry.comments)
+                writeComment(out, comment);
+        }
+        out.flush();
+    }
+
+    static CommentProperties readComment(DataInputStream in, String fileName) throws IOException {
+        CommentProperties comment = new CommentProperties();
+        comment.fileName = fileName;
+        comment.lineNumber = in.readInt();
+        comment.firstLineNumber = in.readInt();
+        comment.lastLineNumber = in.readInt();
+        comment.toolName = readString(in);
+        comment.isNonMisra = in.readBoolean();
+        comment.unresolvedComment = readString(in);
+        int suppressionCount = in.readInt();
+        comment.suppressions = new HashMap<String, Suppression>(suppressionCount);
+        for (int i = 0; i < suppressionCount; i++) {
+            Suppression suppression = new Suppression();
+            suppression.guidelineId = readString(in);
+            suppression.isFalsePositive = in.readBoolean();
+            suppression.isDeviation = in.readBoolean();
+            suppression.deviationReference = readString(in);
+            suppression.deviationLink = readString(in);
+            comment.suppressions.put(suppression.guidelineId, suppression);
+        }
+        return comment;
+    }
+
+    static void writeComment(DataOutputStream out, CommentProperties comment) throws IOException {
+        out.writeInt(comment.lineNumber);
+        out.writeInt(comment.firstLineNumber);
+        out.writeInt(comment.lastLineNumber);
+        writeString(out, comment.toolName);
+        out.writeBoolean(comment.isNonMisra);
+        writeString(out, comment.unresolvedComment);
+        out.writeInt(comment.suppressions.size());
+        for (Suppression suppression : comment.suppressions.values()) {
+            writeString(out, suppression.guidelineId);
+            out.writeBoolean(suppression.isFalsePositive);
+            out.writeBoolean(suppression.isDeviation);
+            writeString(out, suppression.deviationReference);
+            writeString(out, suppression.deviationLink);
+        }
+    }
+
+    /** Writes a string that may be null or longer than writeUTF allows */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            return null;
+        if (length > MAX_STRING_LENGTH)
+            throw new IOException("Corrupt scan cache");
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return A fingerprint of the tools scanning the files, i.e. their classes,
+     *         tag patterns and MISRA version, in the order given
+     */
+    static String fingerprint(List<WarningParser> tools, String charset) {
+        StringBuilder builder = new StringBuilder(charset);
+        for (WarningParser tool : tools)
+            builder.append('\n').append(tool.getClass().getName()).append('\n').append(tool.getMisraVersion())
+                    .append('\n').append(tool.getFalsePositivePattern()).append('\n')
+                    .append(tool.getDeviationPattern()).append('\n').append(tool.getNonMisraPattern())
+                    .append('\n').append(tool.getGuidelinePattern());
+        return builder.toString();
+    }
+}
@@ -0,0 +1,170 @@
+package rortveiten.misra;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import rortveiten.misra.WarningParser.Suppression;
+
+/**
+ * The lines covered by each suppression, by file and guideline, for matching
+ * violations against the suppressions that apply to them. Suppressions may
+ * cover a line, a block or a whole file, so their ranges nest and overlap.
+ * Building the index takes O(n log n) for n suppressions, and each lookup
+ * O(log n).
+ */
+class SuppressionIndex {
+    private final int guidelineCount;
+    private final Map<String, Ranges[]> files = new HashMap<String, Ranges[]>();
+
+    /**
+     * @param guidelineCount The number of guidelines, which guideline indexes
+     *                       are below
+     */
+    SuppressionIndex(int guidelineCount) {
+        this.guidelineCount = guidelineCount;
+    }
+
+    /**
+     * Adds the lines a suppression applies to. Call {@link #build()} after adding
+     * all suppressions.
+     *
+     * @param fileName       The normalized path of the file
+     * @param guidelineIndex The index of the suppressed guideline
+     * @param firstLine      The first line the suppression applies to
+     * @param lastLine       The last line the suppression applies to
+     * @param suppression    The suppression
+     */
+    void add(String fileName, int guidelineIndex, int firstLine, int lastLine, Suppression suppression) {
+        Ranges[] fileRanges = files.get(fileName);
+        if (fileRanges == null) {
+            fileRanges = new Ranges[guidelineCount];
+            files.put(fileName, fileRanges);
+        }
+        Ranges ranges = fileRanges[guidelineIndex];
+        if (ranges == null) {
+            ranges = new Ranges();
+            fileRanges[guidelineIndex] = ranges;
+        }
+        ranges.add(firstLine, lastLine, suppression);
+    }
+
+    void build() {
+        for (Ranges[] fileRanges : files.values())
+            for (Ranges ranges : fileRanges)
+                if (ranges != null)
+                    ranges.build();
+    }
+
+    /**
+     * @param fileName The normalized path of the file
+     * @return The ranges of each guideline in the file, indexed by guideline, or
+     *         null if there are no suppressions in the file
+     */
+    Ranges[] rangesOf(String fileName) {
+        return files.get(fileName);
+    }
+
+    /**
+     * The ranges of the suppressions of one guideline in one file. When built,
+     * the ranges are flattened into disjoint segments of lines, each with the
+     * innermost suppression covering it, i.e. the one starting last and, of
+     * those, ending first. Looking up a line is then a single binary search,
+     * however the ranges nest or overlap.
+     */
+    static class Ranges {
+        private int[] firstLines = new int[4];
+        private int[] lastLines = new int[4];
+        private Suppression[] suppressions = new Suppression[4];
+        private int size;
+        /** The first line of each segment */
+        private int[] bounds;
+        /** The suppression covering each segment, or null */
+        private Suppression[] answers;
+
+        private void add(int firstLine, int lastLine, Suppression suppression) {
+            if (size == firstLines.length) {
+                firstLines = Arrays.copyOf(firstLines, size * 2);
+                lastLines = Arrays.copyOf(lastLines, size * 2);
+                suppressions = Arrays.copyOf(suppressions, size * 2);
+            }
+            firstLines[size] = firstLine;
+            lastLines[size] = lastLine;
+            suppressions[size] = suppression;
+            size++;
+        }
+
+        private void build() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++)
+                order[i] = i;
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return Integer.compare(firstLines[a], firstLines[b]);
+                }
+            });
+            // The ranges covering the current line, innermost first
+            PriorityQueue<Integer> open = new PriorityQueue<Integer>(Math.max(1, size), new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    if (firstLines[a] != firstLines[b])
+                        return Integer.compare(firstLines[b], firstLines[a]);
+                    return Integer.compare(lastLines[a], lastLines[b]);
+                }
+            });
+            // Lines where the innermost range may change: starts and the line after each end
+            long[] events = new long[size * 2];
+            for (int i = 0; i < size; i++) {
+                events[2 * i] = firstLines[i];
+                events[2 * i + 1] = (long) lastLines[i] + 1;
+            }
+            Arrays.sort(events);
+            int[] segmentBounds = new int[events.length];
+            Suppression[] segmentAnswers = new Suppression[events.length];
+            int segments = 0;
+            int next = 0;
+            for (int e = 0; e < events.length; e++) {
+                if ((e > 0 && events[e] == events[e - 1]) || events[e] > Integer.MAX_VALUE)
+                    continue;
+                int line = (int) events[e];
+                while (next < size && firstLines[order[next]] <= line)
+                    open.add(order[next++]);
+                // Ranges that have ended are removed only once they become the innermost
+                while (!open.isEmpty() && lastLines[open.peek()] < line)
+                    open.poll();
+                Suppression answer = open.isEmpty() ? null : suppressions[open.peek()];
+                if (segments > 0 && segmentAnswers[segments - 1] == answer)
+                    continue;
+                segmentBounds[segments] = line;
+                segmentAnswers[segments] = answer;
+                segments++;
+            }
+            bounds = Arrays.copyOf(segmentBounds, segments);
+            answers = Arrays.copyOf(segmentAnswers, segments);
+            firstLines = null;
+            lastLines = null;
+            suppressions = null;
+        }
+
+        /**
+         * @return The innermost suppression covering the line, or null if no
+         *         suppression covers the line
+         */
+        Suppression find(int line) {
+            // Index of the last segment starting on or before the line
+            int low = 0;
+            int high = bounds.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (bounds[middle] <= line)
+                    low = middle + 1;
+                else
+                    high = middle - 1;
+            }
+            return high < 0 ? null : answers[high];
+        }
+    }
+}
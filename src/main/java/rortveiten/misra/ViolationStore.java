@@ -0,0 +1,263 @@
+package rortveiten.misra;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every violation read from the warnings, kept as three columns of primitive
+ * ints: the index of the guideline, the index of the file and the line number.
+ * File names are stored once each and referred to by index, so a violation
+ * takes 12 bytes no matter how long its path is, and millions of warnings can
+ * be kept without creating an object for each.
+ */
+public class ViolationStore {
+    private static final int INITIAL_CAPACITY = 1024;
+    /** The most line numbers of a guideline in a file listed by the summary */
+    static final int MAX_LINES_IN_SUMMARY = 10;
+
+    private int[] guidelineIndexes = new int[INITIAL_CAPACITY];
+    private int[] fileIndexes = new int[INITIAL_CAPACITY];
+    private int[] lineNumbers = new int[INITIAL_CAPACITY];
+    private int size;
+    private final Map<String, Integer> fileIndexByName = new HashMap<String, Integer>();
+    private final List<String> fileNames = new ArrayList<String>();
+
+    /**
+     * @param guidelineIndex Index of the guideline in
+     *                       {@link WarningParser#getGuidelines()}
+     * @param fileName       The file of the violation as given in the warning,
+     *                       or "" if unknown
+     * @param lineNumber     The line of the violation, or 0 if unknown
+     */
+    public void add(int guidelineIndex, String fileName, int lineNumber) {
+        add(guidelineIndex, fileIndex(fileName), lineNumber);
+    }
+
+    private void add(int guidelineIndex, int fileIndex, int lineNumber) {
+        if (size == guidelineIndexes.length) {
+            int capacity = size * 2;
+            guidelineIndexes = Arrays.copyOf(guidelineIndexes, capacity);
+            fileIndexes = Arrays.copyOf(fileIndexes, capacity);
+            lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+        }
+        guidelineIndexes[size] = guidelineIndex;
+        fileIndexes[size] = fileIndex;
+        lineNumbers[size] = lineNumber;
+        size++;
+    }
+
+    /**
+     * Adds all violations of another store
+     *
+     * @param other         The store to add
+     * @param guidelineMap  The index in this store of each guideline index in the
+     *                      other store, -1 to leave those violations out, or null
+     *                      if the indexes are the same
+     */
+    public void addAll(ViolationStore other, int[] guidelineMap) {
+        int[] fileMap = new int[other.fileNames.size()];
+        for (int i = 0; i < fileMap.length; i++)
+            fileMap[i] = fileIndex(other.fileNames.get(i));
+        for (int i = 0; i < other.size; i++) {
+            int guidelineIndex = guidelineMap == null ? other.guidelineIndexes[i]
+                    : guidelineMap[other.guidelineIndexes[i]];
+            if (guidelineIndex >= 0)
+                add(guidelineIndex, fileMap[other.fileIndexes[i]], other.lineNumbers[i]);
+        }
+    }
+
+    private int fileIndex(String fileName) {
+        if (fileName == null)
+            fileName = "";
+        Integer index = fileIndexByName.get(fileName);
+        if (index == null) {
+            index = fileNames.size();
+            fileNames.add(fileName);
+            fileIndexByName.put(fileName, index);
+        }
+        return index;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getGuidelineIndex(int violation) {
+        return guidelineIndexes[violation];
+    }
+
+    public String getFileName(int violation) {
+        return fileNames.get(fileIndexes[violation]);
+    }
+
+    public int getLineNumber(int violation) {
+        return lineNumbers[violation];
+    }
+
+    /**
+     * @param guidelines    The guidelines the indexes refer to
+     * @param workspaceRoot The absolute path of the workspace, which file names
+     *                      are made relative to
+     * @return The violations of each file, the files with the most violations
+     *         first. Violations whose file is not known are under the file "".
+     */
+    public List<FileViolations> summarizeByFile(List<Guideline> guidelines, String workspaceRoot) {
+        String[] normalizedNames = new String[fileNames.size()];
+        for (int i = 0; i < normalizedNames.length; i++)
+            normalizedNames[i] = IncrementalState.normalizePath(fileNames.get(i), workspaceRoot);
+        // Line numbers by guideline index, by file
+        Map<String, Map<Integer, List<Integer>>> lines = new HashMap<String, Map<Integer, List<Integer>>>();
+        Map<String, Map<Integer, int[]>> counts = new HashMap<String, Map<Integer, int[]>>();
+        for (int i = 0; i < size; i++) {
+            String fileName = normalizedNames[fileIndexes[i]];
+            Map<Integer, int[]> fileCounts = counts.get(fileName);
+            if (fileCounts == null) {
+                fileCounts = new HashMap<Integer, int[]>();
+                counts.put(fileName, fileCounts);
+                lines.put(fileName, new HashMap<Integer, List<Integer>>());
+            }
+            Integer guidelineIndex = guidelineIndexes[i];
+            int[] count = fileCounts.get(guidelineIndex);
+            if (count == null) {
+                count = new int[1];
+                fileCounts.put(guidelineIndex, count);
+                lines.get(fileName).put(guidelineIndex, new ArrayList<Integer>());
+            }
+            count[0]++;
+            addLine(lines.get(fileName).get(guidelineIndex), lineNumbers[i]);
+        }
+        List<FileViolations> summary = new ArrayList<FileViolations>(counts.size());
+        for (Map.Entry<String, Map<Integer, int[]>> file : counts.entrySet()) {
+            List<Integer> order = new ArrayList<Integer>(file.getValue().keySet());
+            Collections.sort(order);
+            List<GuidelineViolations> fileGuidelines = new ArrayList<GuidelineViolations>(order.size());
+            int total = 0;
+            for (Integer guidelineIndex : order) {
+                int count = file.getValue().get(guidelineIndex)[0];
+                List<Integer> guidelineLines = lines.get(file.getKey()).get(guidelineIndex);
+                Collections.sort(guidelineLines);
+                fileGuidelines.add(new GuidelineViolations(guidelines.get(guidelineIndex).getId(), count,
+                        guidelineLines));
+                total += count;
+            }
+            summary.add(new FileViolations(file.getKey(), total, fileGuidelines));
+        }
+        Collections.sort(summary, new Comparator<FileViolations>() {
+            @Override
+            public int compare(FileViolations a, FileViolations b) {
+                if (a.violationCount != b.violationCount)
+                    return Integer.compare(b.violationCount, a.violationCount);
+                return a.fileName.compareTo(b.fileName);
+            }
+        });
+        return summary;
+    }
+
+    /** Keeps the lowest distinct line numbers, at most {@link #MAX_LINES_IN_SUMMARY} */
+    private static void addLine(List<Integer> lines, int line) {
+        if (line <= 0 || lines.contains(line))
+            return;
+        if (lines.size() < MAX_LINES_IN_SUMMARY) {
+            lines.add(line);
+            return;
+        }
+        int highest = 0;
+        for (int i = 1; i < lines.size(); i++)
+            if (lines.get(i) > lines.get(highest))
+                highest = i;
+        if (line < lines.get(highest))
+            lines.set(highest, line);
+    }
+
+    /** The violations of one file, by guideline */
+    public static class FileViolations implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final String fileName;
+        private final int violationCount;
+        private final List<GuidelineViolations> guidelines;
+
+        public FileViolations(String fileName, int violationCount, List<GuidelineViolations> guidelines) {
+            this.fileName = fileName;
+            this.violationCount = violationCount;
+            this.guidelines = guidelines;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public int getViolationCount() {
+            return violationCount;
+        }
+
+        public List<GuidelineViolations> getGuidelines() {
+            return guidelines;
+        }
+
+        /**
+         * @return The number of violations of each guideline, in the order of the
+         *         guidelines
+         */
+        public Map<String, Integer> getGuidelineCounts() {
+            Map<String, Integer> ret = new LinkedHashMap<String, Integer>();
+            for (GuidelineViolations guideline : guidelines)
+                ret.put(guideline.guidelineId, guideline.count);
+            return ret;
+        }
+    }
+
+    /** The violations of one guideline in a file */
+    public static class GuidelineViolations implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final String guidelineId;
+        private final int count;
+        private final int[] lineNumbers;
+
+        public GuidelineViolations(String guidelineId, int count, List<Integer> lineNumbers) {
+            this.guidelineId = guidelineId;
+            this.count = count;
+            this.lineNumbers = new int[lineNumbers.size()];
+            for (int i = 0; i < this.lineNumbers.length; i++)
+                this.lineNumbers[i] = lineNumbers.get(i);
+        }
+
+        public String getGuidelineId() {
+            return guidelineId;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return The lowest few distinct lines of the violations, sorted. Lines
+         *         that are not known are left out.
+         */
+        public int[] getLineNumbers() {
+            return lineNumbers.clone();
+        }
+
+        /**
+         * @return The line numbers separated by commas, ending with "..." if only
+         *         some of the lines are listed
+         */
+        public String getLines() {
+            StringBuilder ret = new StringBuilder();
+            for (int line : lineNumbers) {
+                if (ret.length() > 0)
+                    ret.append(", ");
+                ret.append(line);
+            }
+            if (lineNumbers.length > 0 && lineNumbers.length < count && lineNumbers.length == MAX_LINES_IN_SUMMARY)
+                ret.append(", ...");
+            return ret.toString();
+        }
+    }
+}
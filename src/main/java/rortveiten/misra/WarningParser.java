@@ -1,29 +1,42 @@
 package rortveiten.misra;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Reader;
 import java.io.Writer;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.ExtensionList;
 import hudson.ExtensionPoint;
 import hudson.FilePath;
 import jenkins.model.Jenkins;
 import rortveiten.misra.Guideline.Category;
 import rortveiten.misra.Guideline.ComplianceStatus;
+import rortveiten.misra.MappedSourceScanner.MarkedComment;
 
 /**
  * Abstract class with functions to parse warnings from a specific MISRA checker
@@ -37,9 +50,15 @@ import rortveiten.misra.Guideline.ComplianceStatus;
 public abstract class WarningParser implements ExtensionPoint {
 
     protected static class Violation {
+        /** The guideline id as written in the warning. Only needed if guidelineIndex is -1. */
         String guidelineId;
+        /**
+         * Index of the guideline in {@link WarningParser#getGuidelines()}, or -1 to
+         * look it up from guidelineId. Set it with
+         * {@link WarningParser#guidelineIndex(String, CharSequence, int, int)}.
+         */
+        int guidelineIndex = -1;
         String fileName = "";
-        @SuppressFBWarnings("URF_UNREAD_FIELD") // For future use
         int lineNumber = 0;
     }
 
@@ -49,11 +68,54 @@ public abstract class WarningParser implements ExtensionPoint {
         boolean isDeviation;
         String deviationReference;
         String deviationLink;
+        /**
+         * The number of warnings in the lines of the comment, or -1 if the
+         * suppressions have not been correlated with the warnings
+         */
+        int matchedWarnings = -1;
+    }
+
+    /** A suppression comment and where it is found in the source text */
+    protected static class CommentSpan {
+        String text;
+        /** Offset of the first character of text, or -1 if unknown */
+        int start;
+        /** Offset just past the last character of text, or -1 if unknown */
+        int end;
+        /** The line text starts on, counting from 1, or -1 if unknown */
+        int lineNumber;
+
+        public CommentSpan(String text, int start, int end, int lineNumber) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            this.lineNumber = lineNumber;
+        }
     }
 
     protected static class CommentProperties {
         int lineNumber;
+        /**
+         * The first and last line the comment applies to, see
+         * {@link WarningParser#suppressionScope(String)}, or -1 if unknown
+         */
+        int firstLineNumber;
+        int lastLineNumber;
+        /** The scope of the comment, only kept until blocks are paired */
+        SuppressionScope scope;
+        /**
+         * For suppressions read from a suppressions file, the files they apply to,
+         * where "*" matches any text. Null for suppression comments.
+         */
+        String filePattern;
         String fileName;
+        /** Name of the tool the comment belongs to, or null for this parser's tool */
+        String toolName;
+        /**
+         * Text of the comment if no suppressed guideline could be determined from
+         * it, otherwise null
+         */
+        String unresolvedComment;
         boolean isNonMisra;
         Map<String, Suppression> suppressions;
     }
@@ -101,6 +163,32 @@ public abstract class WarningParser implements ExtensionPoint {
      */
     protected abstract List<String> findSuppressionComments(String fileContent);
 
+    /**
+     * Like {@link #findSuppressionComments(String)}, but also returns where each
+     * comment is found. The default implementation calls findSuppressionComments
+     * and searches for each returned comment in the file content, in order.
+     * Override this method if the parser already knows the positions while
+     * finding the comments, to avoid searching the content a second time.
+     * 
+     * @param fileContent The full contents of the source file as a string
+     * @return The suppression comments with their offsets and line numbers, in
+     *         the order they appear in the file
+     */
+    protected List<CommentSpan> findSuppressionCommentSpans(String fileContent) {
+        List<String> comments = findSuppressionComments(fileContent);
+        List<CommentSpan> spans = new ArrayList<CommentSpan>(comments.size());
+        LineNumberFinder lineNumberFinder = new LineNumberFinder(fileContent);
+        for (String comment : comments) {
+            int lineNumber = lineNumberFinder.findNext(comment);
+            if (lineNumber < 0)
+                spans.add(new CommentSpan(comment, -1, -1, -1));
+            else
+                spans.add(new CommentSpan(comment, lineNumberFinder.getStart(), lineNumberFinder.getEnd(),
+                        lineNumber));
+        }
+        return spans;
+    }
+
     /**
      * For a single suppression comment, find each MISRA violation that is
      * suppressed by this comment.
@@ -119,6 +207,34 @@ public abstract class WarningParser implements ExtensionPoint {
      */
     protected abstract Set<String> getGuidelineIdsFromComment(String comment);
 
+    /**
+     * Returns the text that every suppression comment of this tool starts with,
+     * right after the comment opener and any whitespace, e.g. "lint" for PC-lint.
+     * When a marker is given, local source files are scanned on raw bytes, and
+     * {@link #findSuppressionComments(String)} is only called with the text of
+     * each comment starting with the marker instead of the whole file. Override
+     * if your tool has such a marker.
+     * 
+     * @return An ASCII marker, or null to always pass the full file content to
+     *         findSuppressionComments
+     */
+    protected String suppressionCommentMarker() {
+        return null;
+    }
+
+    /**
+     * Returns texts of which every warning line describing a MISRA violation
+     * contains at least one, e.g. "[MISRA " for PC-lint. Lines containing none of
+     * them are skipped without calling {@link #parseWarningLine(String)}, which
+     * makes reading logs with many other messages much faster. Override if your
+     * tool's MISRA warnings always contain such a text.
+     * 
+     * @return The texts, or null to pass every line to parseWarningLine
+     */
+    protected String[] warningLineLiterals() {
+        return null;
+    }
+
     /**
      * @return The name of this warning parser
      */
@@ -146,17 +262,52 @@ public abstract class WarningParser implements ExtensionPoint {
     public static final int ERR_READ_FILE = 16;
     public static final int ERR_WRITE_FILE = 32;
 
+    private static final int WARNINGS_BUFFER_SIZE = 64 * 1024;
+    private static final int WARNINGS_HEAD_SIZE = 256;
+    private static final Pattern SARIF_GUIDELINE_PATTERN = Pattern
+            .compile("(?i)\\b(rule|dir(?:ective)?)[ _.-]?(\\d+(?:[.-]\\d+)*)\\b");
+    /** The most parsed comments kept by each parser */
+    private static final int MAX_MEMOIZED_COMMENTS = 4096;
+    /** Longer comments are parsed every time, since they are rarely repeated */
+    private static final int MAX_MEMOIZED_COMMENT_LENGTH = 1024;
+    private static final Pattern SARIF_MISRA_RULE_PATTERN = Pattern
+            .compile("(?i)misra[ _-]?c(?:pp|\\+\\+)?[ _:-]?(?:\\d{4})[ _:-]+(\\d+(?:[.-]\\d+)*)");
+
     private Pattern falsePositivePattern = Pattern.compile("\\bFALSE.?POSITIVE(?:\\(([^\\)]*)\\))?");
     private Pattern deviationPattern = Pattern.compile(
             "\\bDEVIATION\\(\\s*([^,\\(\\)]+?)\\s*(?:\\)|(?:,\\s*([^\\(\\)]*?)\\s*(?:\\)|(?:,\\s*([^\\(\\)]*?)\\s*\\)))))");
     private Pattern nonMisraPattern = Pattern.compile("\\bNON.?MISRA");
     private Pattern guidelinePattern = Pattern.compile("\\bGUIDELINE\\(([^\\)]*)\\)");
-    private Map<String, Guideline> guidelines;
+    /** Parsed suppression comments by comment text, cleared when the patterns change */
+    private final LruCache<String, ParsedComment> parsedComments = new LruCache<String, ParsedComment>(
+            MAX_MEMOIZED_COMMENTS);
+    private GuidelineCatalog catalog;
+    /** Guideline indexes by id, only used when the guidelines are not from a catalog */
+    private Map<String, Integer> guidelineIndexes;
     private List<Guideline> guidelineList;
+    private Guideline[] guidelineTable;
+    private int[] violationCounts;
+    private ViolationStore violations;
     private MisraVersion misraVersion;
-    private String currentFile;
+    private final ThreadLocal<String> currentFile = new ThreadLocal<String>();
     private String logFilePath;
+    private String scanCacheFilePath;
+    private File sharedScanCacheDirectory;
+    private long sharedScanCacheMaxBytes;
+    /** State of an earlier build, whose data is used for unchanged files, or null */
+    private IncrementalState previousState;
+    /** Files changed since previousState was made */
+    private Set<String> changedFiles;
+    /** Violations in each file found by this parser, or null if they are not kept */
+    private IncrementalState fileViolations;
+    private IncrementalState incrementalState;
     private FilePath workspace;
+    private int parallelism = 1;
+    private boolean correlateSuppressions;
+    /** Suppressions read from suppressions files */
+    private final List<CommentProperties> externalSuppressions = new ArrayList<CommentProperties>();
+    private int usedSuppressionCount;
+    private int staleSuppressionCount;
     protected int errorCode = 0;
     protected PrintStream out = System.out;
 
@@ -186,27 +337,53 @@ public abstract class WarningParser implements ExtensionPoint {
         this.misraVersion = misraVersion;
         readGuidelines();
         errorCode = 0;
+        parsedComments.clear();
         setMisraVersion(misraVersion);
     }
 
+    /**
+     * Creates a parser of the same type for a single build. The new parser has its
+     * own guidelines, error code, logger and settings, and copies the comment tag
+     * patterns and incremental settings from this one, so the registered extension can be shared by
+     * concurrent builds without ever being modified.
+     *
+     * @param misraVersion Version of the MISRA rules to use
+     * @param workspace    Root of the source files and log file of the build
+     * @return A new, initialized parser
+     */
+    public WarningParser newSession(MisraVersion misraVersion, FilePath workspace) {
+        WarningParser session;
+        try {
+            session = getClass().getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Could not create warning parser " + getClass().getName(), ex);
+        }
+        session.falsePositivePattern = falsePositivePattern;
+        session.deviationPattern = deviationPattern;
+        session.nonMisraPattern = nonMisraPattern;
+        session.guidelinePattern = guidelinePattern;
+        session.initialize(misraVersion);
+        session.setWorkspace(workspace);
+        if (fileViolations != null)
+            session.setIncremental(previousState, changedFiles);
+        return session;
+    }
+
     public final MisraVersion getMisraVersion() {
         return misraVersion;
     }
 
     private void readGuidelines() {
-        String regex = "/\\*+ ((?:Rule|Dir) (?:\\d+-\\d+-\\d+|\\d+\\.\\d+|\\d+)) +\\(([Rr]eq|[Aa]dv|[Mm]and|doc)\\) +\\*";
-        String misraLintFileText = getMisraLintFileContent(misraVersion);
-        Matcher matcher = Pattern.compile(regex).matcher(misraLintFileText);
-        guidelines = new HashMap<String, Guideline>(305);// > 228/0.75, since 228 is the maximum number of guidelines
-        guidelineList = new ArrayList<Guideline>();
-        while (matcher.find()) {
-            String guidelineId = matcher.group(1);
-            guidelineId = guidelineId.replaceFirst("Dir ", "Directive ");
-            String category = matcher.group(2);
-            Guideline guideline = new Guideline(guidelineId, category);
-            guidelines.put(guidelineId, guideline);
-            guidelineList.add(guideline);
-        }
+        catalog = GuidelineCatalog.get(misraVersion);
+        guidelineIndexes = null;
+        setGuidelineTable(catalog.createGuidelines());
+    }
+
+    private void setGuidelineTable(List<Guideline> guidelines) {
+        guidelineList = guidelines;
+        guidelineTable = guidelines.toArray(new Guideline[guidelines.size()]);
+        violationCounts = new int[guidelineTable.length];
+        violations = new ViolationStore();
     }
 
     public final List<Guideline> getGuidelines() {
@@ -219,11 +396,68 @@ public abstract class WarningParser implements ExtensionPoint {
      * @param guidelines List of guideliness
      */
     protected void setGuidelines(List<Guideline> guidelines) {
-        guidelineList = guidelines;
-        this.guidelines = new HashMap<String, Guideline>();
-        for (Guideline guideline : guidelines) {
-            this.guidelines.put(guideline.getId(), guideline);
+        catalog = null;
+        guidelineIndexes = new HashMap<String, Integer>();
+        for (int i = 0; i < guidelines.size(); i++) {
+            guidelineIndexes.put(guidelines.get(i).getId(), i);
         }
+        setGuidelineTable(guidelines);
+    }
+
+    /**
+     * Finds the guideline whose id is the prefix followed by a part of a text, e.g.
+     * "Rule " and the "10.4" in a warning line. Use it in
+     * {@link #parseWarningLine(String)} to set {@link Violation#guidelineIndex}, so
+     * that no string has to be created and hashed to look up the guideline.
+     *
+     * @param prefix Start of the guideline id, may be empty
+     * @param text   Text containing the rest of the guideline id
+     * @param start  Offset of the rest of the id in text
+     * @param end    Offset just past the rest of the id in text
+     * @return Index of the guideline in {@link #getGuidelines()}, or -1 if there is
+     *         no such guideline
+     */
+    protected final int guidelineIndex(String prefix, CharSequence text, int start, int end) {
+        if (catalog != null)
+            return catalog.indexOf(prefix, text, start, end);
+        Integer index = guidelineIndexes.get(prefix + text.subSequence(start, end));
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return The id of the guideline the violation is reported for
+     */
+    protected final String guidelineIdOf(Violation v) {
+        return v.guidelineIndex < 0 ? v.guidelineId : guidelineTable[v.guidelineIndex].getId();
+    }
+
+    private int guidelineIndex(String guidelineId) {
+        return guidelineIndex("", guidelineId, 0, guidelineId.length());
+    }
+
+    /**
+     * @return The guideline with this id, or null if there is no such guideline
+     */
+    private Guideline findGuideline(String guidelineId) {
+        int index = guidelineIndex(guidelineId);
+        return index < 0 ? null : guidelineTable[index];
+    }
+
+    /**
+     * @return The number of violations reported in the warnings for each guideline,
+     *         in the order of {@link #getGuidelines()}
+     */
+    public final int[] getViolationCounts() {
+        return violationCounts.clone();
+    }
+
+    /**
+     * @return Every violation reported in the warnings, with its file and line.
+     *         Violations of unchanged files carried over from an earlier build
+     *         have line number 0.
+     */
+    public final ViolationStore getViolationStore() {
+        return violations;
     }
 
     /**
@@ -264,7 +498,7 @@ public abstract class WarningParser implements ExtensionPoint {
      * @return A bitfield ORed together of all the errors that have occurred (see
      *         the errorcodes starting with ERR_ )
      */
-    public final int getErrorCode() {
+    public final synchronized int getErrorCode() {
         return errorCode;
     }
 
@@ -274,6 +508,7 @@ public abstract class WarningParser implements ExtensionPoint {
 
     public final void setFalsePositivePattern(String regex) {
         falsePositivePattern = Pattern.compile(regex);
+        parsedComments.clear();
     }
 
     public final String getDeviationPattern() {
@@ -282,6 +517,7 @@ public abstract class WarningParser implements ExtensionPoint {
 
     public final void setDeviationPattern(String regex) {
         deviationPattern = Pattern.compile(regex);
+        parsedComments.clear();
     }
 
     public final String getNonMisraPattern() {
@@ -290,6 +526,7 @@ public abstract class WarningParser implements ExtensionPoint {
 
     public final void setNonMisraPattern(String regex) {
         nonMisraPattern = Pattern.compile(regex);
+        parsedComments.clear();
     }
 
     public final String getGuidelinePattern() {
@@ -298,6 +535,115 @@ public abstract class WarningParser implements ExtensionPoint {
 
     public final void setGuidelinePattern(String regex) {
         guidelinePattern = Pattern.compile(regex);
+        parsedComments.clear();
+    }
+
+    /** The lines of a source file a suppression comment applies to */
+    protected enum SuppressionScope {
+        /** The line of the comment */
+        LINE,
+        /** The line of the comment and the next */
+        LINE_AND_NEXT,
+        /** From the comment to the end of the file */
+        REST_OF_FILE,
+        /** The whole file */
+        FILE,
+        /** From the comment to the next BLOCK_END comment suppressing the same guidelines */
+        BLOCK_BEGIN,
+        /** Ends a block. The comment suppresses nothing itself. */
+        BLOCK_END,
+        /** Lines that cannot be told from the file, e.g. the uses of a macro */
+        UNKNOWN
+    }
+
+    /**
+     * Returns the lines a suppression comment applies to. The default
+     * implementation returns {@link SuppressionScope#LINE_AND_NEXT}, which covers
+     * comments at the end of the line they suppress warnings in and comments on
+     * the line before. Override if your tool's comments apply to other lines.
+     * 
+     * @param comment The text of the comment, as returned by
+     *                {@link #findSuppressionComments(String)}
+     * @return The scope of the comment
+     */
+    protected SuppressionScope suppressionScope(String comment) {
+        return SuppressionScope.LINE_AND_NEXT;
+    }
+
+    /** A suppression given in a suppressions file rather than in a source file */
+    protected static class ExternalSuppression {
+        final String comment;
+        final String filePattern;
+        final int lineNumber;
+
+        /**
+         * @param comment     Text parsed like a suppression comment, i.e. with
+         *                    {@link WarningParser#getGuidelineIdsFromComment(String)}
+         *                    and the tag patterns
+         * @param filePattern The files suppressed, where "*" matches any text and
+         *                    "?" any character, or null for all files
+         * @param lineNumber  The line suppressed, or 0 for the whole file
+         */
+        public ExternalSuppression(String comment, String filePattern, int lineNumber) {
+            this.comment = comment;
+            this.filePattern = filePattern;
+            this.lineNumber = lineNumber;
+        }
+    }
+
+    /**
+     * Override together with {@link #parseSuppressionsFileLine(String)} if your
+     * tool can read suppressions from a file.
+     * 
+     * @return true if {@link #readSuppressionsFile(String, List)} is supported
+     */
+    public boolean supportsSuppressionsFile() {
+        return false;
+    }
+
+    /**
+     * @param line A line of a suppressions file
+     * @return The suppression of the line, or null if the line is empty or a
+     *         comment
+     */
+    protected ExternalSuppression parseSuppressionsFileLine(String line) {
+        return null;
+    }
+
+    /**
+     * Reads a file listing suppressions that are not in the source files, e.g.
+     * the file given to cppcheck with --suppressions-list. The suppressions are
+     * applied by {@link #parseSourceFiles(List, List)} together with the
+     * suppression comments.
+     * 
+     * @param fileName The path of the file, used in messages and the log file
+     * @param lines    The lines of the file
+     */
+    public final void readSuppressionsFile(String fileName, List<String> lines) {
+        if (!supportsSuppressionsFile()) {
+            handleSuppressionsFileNotSupported(fileName);
+            return;
+        }
+        currentFile.set(fileName);
+        try {
+            for (int i = 0; i < lines.size(); i++) {
+                ExternalSuppression entry = parseSuppressionsFileLine(lines.get(i));
+                if (entry == null)
+                    continue;
+                CommentProperties suppression = parseComment(entry.comment);
+                suppression.fileName = fileName;
+                suppression.toolName = name();
+                suppression.lineNumber = i + 1;
+                suppression.filePattern = entry.filePattern == null ? "*" : entry.filePattern;
+                suppression.firstLineNumber = entry.lineNumber > 0 ? entry.lineNumber : 1;
+                suppression.lastLineNumber = entry.lineNumber > 0 ? entry.lineNumber : Integer.MAX_VALUE;
+                if (suppression.suppressions.size() == 0 && !suppression.isNonMisra)
+                    suppression.unresolvedComment = lines.get(i).trim();
+                externalSuppressions.add(suppression);
+            }
+        } finally {
+            currentFile.remove();
+        }
     }
 
     public final void setLogger(PrintStream logger) {
@@ -305,31 +651,204 @@ public abstract class WarningParser implements ExtensionPoint {
     }
 
     protected List<CommentProperties> parseSourceFile(String fileName) {
+        return parseSourceFile(fileName, Collections.<WarningParser>emptyList());
+    }
+
+    /**
+     * Finds the suppression comments of this tool and the other tools in a
+     * source file, first all comments of this tool, then those of each other
+     * tool. If every tool has a {@link #suppressionCommentMarker()} and the file
+     * is local, the file is scanned once on raw bytes for all markers. Otherwise
+     * its content is read and given to each tool.
+     * 
+     * @return The comments, or null if the file could not be read
+     */
+    private List<CommentProperties> parseSourceFile(String fileName, List<WarningParser> otherTools) {
+        List<WarningParser> tools = new ArrayList<WarningParser>(otherTools.size() + 1);
+        tools.add(this);
+        tools.addAll(otherTools);
         List<CommentProperties> commentProperties = new ArrayList<CommentProperties>();
+        FilePath file = workspace.child(fileName);
+        List<String> markers = file.isRemote() ? null : new ArrayList<String>(tools.size());
+        for (int i = 0; markers != null && i < tools.size(); i++) {
+            String marker = tools.get(i).suppressionCommentMarker();
+            if (marker == null)
+                markers = null;
+            else
+                markers.add(marker);
+        }
+        if (markers != null) {
+            List<MarkedComment> markedComments;
+            try {
+                markedComments = new MappedSourceScanner(markers, Charset.defaultCharset())
+                        .scan(new File(file.getRemote()));
+            } catch (IOException e) {
+                return null;
+            }
+            for (int i = 0; i < tools.size(); i++) {
+                for (MarkedComment markedComment : markedComments) {
+                    if (markedComment.getMarkerIndex() == i)
+                        addSuppressionComments(tools.get(i), commentProperties, fileName, markedComment.getText(),
+                                markedComment.getLineNumber() - 1);
+                }
+            }
+            return commentProperties;
+        }
         String fileContent;
         try {
-            fileContent = workspace.child(fileName).readToString();
+            fileContent = file.readToString();
         } catch (IOException | InterruptedException e) {
             return null;
         }
-        List<String> comments = findSuppressionComments(fileContent);
-        LineNumberFinder lineNumberFinder = new LineNumberFinder(fileContent);
-        for (String comment : comments) {
+        for (WarningParser tool : tools)
+            addSuppressionComments(tool, commentProperties, fileName, fileContent, 0);
+        return commentProperties;
+    }
+
+    /**
+     * Adds the suppression comments the tool finds in the text. Errors of another
+     * tool are reported for the file as well.
+     */
+    private void addSuppressionComments(WarningParser tool, List<CommentProperties> commentProperties,
+            String fileName, String text, int firstLineOffset) {
+        if (tool == this) {
+            addSuppressionComments(commentProperties, fileName, text, firstLineOffset);
+            return;
+        }
+        tool.currentFile.set(fileName);
+        try {
+            tool.addSuppressionComments(commentProperties, fileName, text, firstLineOffset);
+        } finally {
+            tool.currentFile.remove();
+        }
+    }
+
+    private void addSuppressionComments(List<CommentProperties> commentProperties, String fileName, String text,
+            int firstLineOffset) {
+        for (CommentSpan span : findSuppressionCommentSpans(text)) {
+            String comment = span.text;
             CommentProperties suppressionComment = parseComment(comment);
             suppressionComment.fileName = fileName;
-            suppressionComment.lineNumber = lineNumberFinder.findNext(comment);
-            if ((suppressionComment.suppressions == null || suppressionComment.suppressions.size() == 0)
-                    && !suppressionComment.isNonMisra) {
-                handleCouldNotDetermineWhichGuidelineIsSuppressed(comment);
+            suppressionComment.toolName = name();
+            suppressionComment.lineNumber = span.lineNumber < 0 ? span.lineNumber : span.lineNumber + firstLineOffset;
+            setScope(suppressionComment, suppressionScope(comment));
+            if (suppressionComment.suppressions.size() == 0 && !suppressionComment.isNonMisra)
+                suppressionComment.unresolvedComment = comment;
+            commentProperties.add(suppressionComment);
+        }
+    }
+
+    private static void setScope(CommentProperties comment, SuppressionScope scope) {
+        int line = comment.lineNumber;
+        comment.scope = scope;
+        comment.firstLineNumber = scope == SuppressionScope.FILE ? 1 : line;
+        comment.lastLineNumber = line;
+        if (line < 0 || scope == SuppressionScope.UNKNOWN) {
+            comment.firstLineNumber = -1;
+            comment.lastLineNumber = -1;
+        } else if (scope == SuppressionScope.LINE_AND_NEXT) {
+            comment.lastLineNumber = line + 1;
+        } else if (scope == SuppressionScope.REST_OF_FILE || scope == SuppressionScope.FILE
+                || scope == SuppressionScope.BLOCK_BEGIN) {
+            comment.lastLineNumber = Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Ends each block at the first following BLOCK_END comment of the same tool
+     * that suppresses the same guidelines, and removes the BLOCK_END comments. A
+     * block that is never ended lasts to the end of the file.
+     * 
+     * @param comments The comments of one file, in the order they appear for
+     *                 each tool
+     * @return comments, or null if it is null
+     */
+    private static List<CommentProperties> pairBlocks(List<CommentProperties> comments) {
+        if (comments == null)
+            return null;
+        Map<String, List<CommentProperties>> openBlocks = null;
+        for (Iterator<CommentProperties> it = comments.iterator(); it.hasNext();) {
+            CommentProperties comment = it.next();
+            SuppressionScope scope = comment.scope;
+            comment.scope = null;
+            if (scope != SuppressionScope.BLOCK_BEGIN && scope != SuppressionScope.BLOCK_END)
+                continue;
+            if (openBlocks == null)
+                openBlocks = new HashMap<String, List<CommentProperties>>();
+            String key = comment.toolName + new TreeSet<String>(comment.suppressions.keySet());
+            List<CommentProperties> open = openBlocks.get(key);
+            if (scope == SuppressionScope.BLOCK_BEGIN) {
+                if (open == null) {
+                    open = new ArrayList<CommentProperties>();
+                    openBlocks.put(key, open);
+                }
+                open.add(comment);
             } else {
-                commentProperties.add(suppressionComment);
+                if (open != null && !open.isEmpty())
+                    open.remove(open.size() - 1).lastLineNumber = comment.lineNumber;
+                it.remove();
             }
         }
-        return commentProperties;
+        return comments;
+    }
+
+    /**
+     * The tags and guidelines of a suppression comment, shared by every comment
+     * with the same text. It is never modified once parsed, and each comment gets
+     * its own copy of the suppressions.
+     */
+    private static final class ParsedComment {
+        final Suppression[] suppressions;
+        final boolean isNonMisra;
+        /** The guidelines of false positive tags that the comment does not suppress */
+        final String[] falsePositivesNotFound;
+        /** The guidelines of deviation tags that the comment does not suppress */
+        final String[] deviationsNotFound;
+
+        ParsedComment(CommentProperties parsed, List<String> falsePositivesNotFound, List<String> deviationsNotFound) {
+            this.suppressions = parsed.suppressions.values().toArray(new Suppression[parsed.suppressions.size()]);
+            this.isNonMisra = parsed.isNonMisra;
+            this.falsePositivesNotFound = falsePositivesNotFound.toArray(new String[falsePositivesNotFound.size()]);
+            this.deviationsNotFound = deviationsNotFound.toArray(new String[deviationsNotFound.size()]);
+        }
+
+        CommentProperties newComment() {
+            CommentProperties ret = new CommentProperties();
+            ret.suppressions = new HashMap<String, Suppression>(suppressions.length * 2);
+            ret.isNonMisra = isNonMisra;
+            for (Suppression template : suppressions) {
+                Suppression s = new Suppression();
+                s.guidelineId = template.guidelineId;
+                s.isFalsePositive = template.isFalsePositive;
+                s.isDeviation = template.isDeviation;
+                s.deviationReference = template.deviationReference;
+                s.deviationLink = template.deviationLink;
+                ret.suppressions.put(s.guidelineId, s);
+            }
+            return ret;
+        }
     }
 
+    /**
+     * Parses a suppression comment, or copies an earlier parse of the same text.
+     * Errors found while parsing are reported for each comment, whether it is
+     * parsed or copied.
+     */
     private CommentProperties parseComment(String commentString) {
+        ParsedComment parsed = parsedComments.get(commentString);
+        if (parsed == null) {
+            parsed = parseCommentUncached(commentString);
+            if (commentString.length() <= MAX_MEMOIZED_COMMENT_LENGTH)
+                parsedComments.put(commentString, parsed);
+        }
+        for (String guidelineId : parsed.falsePositivesNotFound)
+            handleFalsePositiveNotFound(guidelineId, commentString);
+        for (String guidelineId : parsed.deviationsNotFound)
+            handleDeviationNotFound(guidelineId, commentString);
+        return parsed.newComment();
+    }
 
+    private ParsedComment parseCommentUncached(String commentString) {
         Set<String> guidelineIds = getIdsFromGuidelineTags(commentString);
         if (guidelineIds.isEmpty())
             guidelineIds = getGuidelineIdsFromComment(commentString);
@@ -343,12 +862,15 @@ public abstract class WarningParser implements ExtensionPoint {
             s.guidelineId = guidelineId;
             ret.suppressions.put(guidelineId, s);
         }
-        markFalsePositives(ret, commentString);
-        markDeviations(ret, commentString);
-        return ret;
+        List<String> falsePositivesNotFound = new ArrayList<String>(0);
+        List<String> deviationsNotFound = new ArrayList<String>(0);
+        markFalsePositives(ret, commentString, falsePositivesNotFound);
+        markDeviations(ret, commentString, deviationsNotFound);
+        return new ParsedComment(ret, falsePositivesNotFound, deviationsNotFound);
     }
 
-    private void markFalsePositives(CommentProperties commentProperties, String commentString) {
+    private void markFalsePositives(CommentProperties commentProperties, String commentString,
+            List<String> notFound) {
         Matcher falsePositiveMatcher = falsePositivePattern.matcher(commentString);
         while (falsePositiveMatcher.find()) {
             if (falsePositiveMatcher.group(1) == null) { // No match for the paranthesized part, global false positive
@@ -362,12 +884,12 @@ public abstract class WarningParser implements ExtensionPoint {
                 if (s != null)
                     s.isFalsePositive = true;
                 else
-                    handleFalsePositiveNotFound(guidelineId, commentString);
+                    notFound.add(guidelineId);
             }
         }
     }
 
-    private void markDeviations(CommentProperties commentProperties, String commentString) {
+    private void markDeviations(CommentProperties commentProperties, String commentString, List<String> notFound) {
         Matcher deviationMatcher = deviationPattern.matcher(commentString);
         while (deviationMatcher.find()) {
             if (deviationMatcher.group(3) == null) { // No match for a third parameter. Global deviation for this
@@ -386,7 +908,7 @@ public abstract class WarningParser implements ExtensionPoint {
                     s.deviationReference = deviationMatcher.group(1);
                     s.deviationLink = addProperProtocolMarker(deviationMatcher.group(2));
                 } else
-                    handleDeviationNotFound(guidelineId, commentString);
+                    notFound.add(guidelineId);
             }
         }
     }
@@ -413,35 +935,572 @@ public abstract class WarningParser implements ExtensionPoint {
     }
 
     public final void parseWarnings(List<String> lines) {
-        for (String line : lines) {
-            List<Violation> vs = parseWarningLine(line);
-            for (Violation v : vs) {
-                if (v != null && v.guidelineId != null && !v.guidelineId.isEmpty()) {
-                    Guideline r = guidelines.get(v.guidelineId);
-                    if (r == null)
-                        handleGuidelineFromWarningNotFound(v);
-                    else if (!isDisapplied(r))
-                        r.setStatus(ComplianceStatus.VIOLATIONS);
-                }
+        String[] literals = warningLineLiterals();
+        for (String line : lines)
+            parseWarning(line, literals);
+    }
+
+    /**
+     * Reads the output of the MISRA checker tool line by line and parses each line
+     * as soon as it has been read. Only a fixed-size buffer is held in memory, so
+     * the size of the warnings file does not matter.
+     * 
+     * @param reader Reader giving the output of the checker tool. The reader is
+     *               not closed by this method.
+     * @throws IOException If reading fails
+     */
+    public final void parseWarnings(Reader reader) throws IOException {
+        BufferedReader lineReader = new BufferedReader(reader, WARNINGS_BUFFER_SIZE);
+        lineReader.mark(WARNINGS_HEAD_SIZE);
+        char[] head = new char[WARNINGS_HEAD_SIZE];
+        int headLength = 0;
+        int read;
+        while (headLength < head.length && (read = lineReader.read(head, headLength, head.length - headLength)) > 0)
+            headLength += read;
+        lineReader.reset();
+        String headText = new String(head, 0, headLength);
+        if (SarifReader.isSarif(headText)) {
+            parseSarif(lineReader);
+            return;
+        }
+        if (isWarningsDocument(headText)) {
+            parseWarningsDocument(lineReader);
+            return;
+        }
+        String[] literals = warningLineLiterals();
+        String line;
+        while ((line = lineReader.readLine()) != null) {
+            if (!line.isEmpty())
+                parseWarning(line, literals);
+        }
+    }
+
+    /**
+     * @return true if literals or line is null, or if the line contains one of the
+     *         literals
+     */
+    private static boolean containsAny(String line, String[] literals) {
+        if (literals == null || line == null)
+            return true;
+        for (String literal : literals) {
+            if (line.indexOf(literal) >= 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Override together with {@link #parseWarningsDocument(Reader)} if the tool
+     * can write its warnings in a structured format, such as XML, that should not
+     * be read line by line.
+     * 
+     * @param head The first characters of the warnings
+     * @return true if the warnings are in the structured format
+     */
+    protected boolean isWarningsDocument(String head) {
+        return false;
+    }
+
+    /**
+     * Reads warnings in the tool's structured format. Called instead of
+     * {@link #parseWarningLine(String)} when {@link #isWarningsDocument(String)}
+     * returns true. Implementations should read the document as a stream and pass
+     * each violation to {@link #reportViolation(Violation)} as soon as it is found.
+     * 
+     * @param reader Reader positioned at the start of the warnings
+     * @throws IOException If reading fails or the document is malformed
+     */
+    protected void parseWarningsDocument(Reader reader) throws IOException {
+        throw new IOException(name() + " does not support structured warnings");
+    }
+
+    private void parseSarif(Reader reader) throws IOException {
+        SarifReader.read(reader, new SarifReader.ResultHandler() {
+            @Override
+            public void result(String ruleId, String fileName, int lineNumber) {
+                String guidelineId = ruleId == null ? null : guidelineIdFromRuleId(ruleId);
+                if (guidelineId == null)
+                    return;
+                Violation v = new Violation();
+                v.guidelineId = guidelineId;
+                v.fileName = fileName;
+                v.lineNumber = lineNumber;
+                reportViolation(v);
             }
+        });
+    }
+
+    /**
+     * Maps the ruleId of a result in a SARIF log to a MISRA guideline. The default
+     * implementation understands ids such as "misra-c2012-10.4",
+     * "misra-c2012-dir-4.1", "MISRA C:2012 Rule 10.4" and "Rule 0-1-1". Override
+     * if your tool names its rules differently.
+     * 
+     * @param ruleId The ruleId of a SARIF result
+     * @return The guideline id, e.g. "Rule 10.4", or null if the rule is not a
+     *         MISRA guideline
+     */
+    protected String guidelineIdFromRuleId(String ruleId) {
+        Matcher matcher = SARIF_GUIDELINE_PATTERN.matcher(ruleId);
+        if (matcher.find())
+            return (matcher.group(1).toLowerCase().startsWith("dir") ? "Directive " : "Rule ") + matcher.group(2);
+        matcher = SARIF_MISRA_RULE_PATTERN.matcher(ruleId);
+        if (matcher.matches())
+            return "Rule " + matcher.group(1);
+        return null;
+    }
+
+    private void parseWarning(String line, String[] literals) {
+        if (!containsAny(line, literals))
+            return;
+        List<Violation> vs = parseWarningLine(line);
+        if (vs == null)
+            return;
+        for (Violation v : vs)
+            reportViolation(v);
+    }
+
+    /**
+     * Marks the guideline of a violation as violated, unless it is disapplied.
+     * Logs an error if the guideline is not found.
+     * 
+     * @param v A violation, ignored if null or without a guideline
+     */
+    protected final void reportViolation(Violation v) {
+        if (v == null)
+            return;
+        String fileName = null;
+        if (fileViolations != null) {
+            fileName = IncrementalState.normalizePath(v.fileName, workspace.getRemote());
+            if (previousState != null && !fileName.isEmpty() && !changedFiles.contains(fileName))
+                return; // Carried over from the earlier build
+        }
+        int index = v.guidelineIndex;
+        if (index < 0) {
+            if (v.guidelineId == null || v.guidelineId.isEmpty())
+                return;
+            index = guidelineIndex(v.guidelineId);
+        }
+        if (index < 0) {
+            handleGuidelineFromWarningNotFound(v);
+        } else {
+            addViolations(index, 1);
+            violations.add(index, v.fileName, v.lineNumber);
+            if (fileViolations != null)
+                fileViolations.addViolations(fileName, guidelineTable[index].getId(), 1);
+        }
+    }
+
+    private void addViolations(int index, int count) {
+        if (violationCounts[index] == 0) {
+            Guideline r = guidelineTable[index];
+            if (!isDisapplied(r))
+                r.setStatus(ComplianceStatus.VIOLATIONS);
+        }
+        violationCounts[index] += count;
+    }
+
+    /**
+     * Adds the violations found by another parser, e.g. one that has read another
+     * warnings file at the same time as this one, to this parser. The statuses are
+     * set according to the GRP read by this parser, and errors from the other
+     * parser are added to this parser's error code.
+     * 
+     * @param other A parser that has read warnings for the same MISRA version
+     */
+    public final void addViolationsFrom(WarningParser other) {
+        boolean sameGuidelines = other.catalog != null && other.catalog == catalog;
+        int[] guidelineMap = sameGuidelines ? null : new int[other.violationCounts.length];
+        for (int i = 0; i < other.violationCounts.length; i++) {
+            int index = sameGuidelines ? i : guidelineIndex(other.guidelineTable[i].getId());
+            if (guidelineMap != null)
+                guidelineMap[i] = index;
+            if (index >= 0 && other.violationCounts[i] != 0)
+                addViolations(index, other.violationCounts[i]);
         }
+        violations.addAll(other.violations, guidelineMap);
+        if (fileViolations != null && other.fileViolations != null)
+            fileViolations.addViolationsFrom(other.fileViolations);
+        addError(other.getErrorCode());
     }
 
     public final void parseSourceFiles(List<String> filesToParse) {
+        parseSourceFiles(filesToParse, Collections.<WarningParser>emptyList());
+    }
+
+    /**
+     * Like {@link #parseSourceFiles(List)}, but also finds the suppression
+     * comments of other tools in the same files. Each file is read only once, and
+     * its content is handed to this parser and to each of the other parsers. The
+     * comments found by all of them are applied to this parser's guidelines, so
+     * that these give the combined compliance of the code with respect to all
+     * the tools. Errors the other parsers find in their comments are added to
+     * this parser's error code.
+     * 
+     * @param filesToParse The source files, relative to the workspace
+     * @param otherTools   Parsers of other tools, initialized for the same MISRA
+     *                     version as this parser. Their own guidelines are not
+     *                     changed.
+     */
+    public final void parseSourceFiles(List<String> filesToParse, List<WarningParser> otherTools) {
+        for (WarningParser tool : otherTools)
+            if (tool.getMisraVersion() != misraVersion)
+                throw new IllegalArgumentException(tool.name() + " is initialized for " + tool.getMisraVersion()
+                        + ", not " + misraVersion);
+        List<WarningParser> tools = new ArrayList<WarningParser>(otherTools.size() + 1);
+        tools.add(this);
+        tools.addAll(otherTools);
+        String fingerprint = SourceScanCache.fingerprint(tools, Charset.defaultCharset().name());
+        SourceScan scan = new SourceScan(otherTools, readScanCache(fingerprint), openSharedScanCache(fingerprint));
+        if (fileViolations != null)
+            startIncrementalState(fingerprint, filesToParse);
+        List<List<CommentProperties>> scannedFiles = null;
+        if (parallelism > 1 && filesToParse.size() > 1)
+            scannedFiles = scanSourceFilesInParallel(filesToParse, scan);
         List<CommentProperties> allComments = new ArrayList<CommentProperties>();
-        for (String filename : filesToParse) {
-            currentFile = filename;
-            List<CommentProperties> comments = parseSourceFile(filename);
+        for (int i = 0; i < filesToParse.size(); i++) {
+            String filename = filesToParse.get(i);
+            currentFile.set(filename);
+            List<CommentProperties> comments = scannedFiles != null ? scannedFiles.get(i) : scan.scan(filename);
             if (comments != null) {
                 modifyGuidelinesBasedOnSuppressionComments(comments);
                 allComments.addAll(comments);
+                if (incrementalState != null)
+                    incrementalState.putComments(scan.stateFileName(filename), comments);
             } else {
                 handleUnableToOpenSourceFile(filename);
             }
         }
+        List<CommentProperties> external = new ArrayList<CommentProperties>(externalSuppressions);
+        for (WarningParser tool : otherTools)
+            external.addAll(tool.externalSuppressions);
+        for (CommentProperties suppression : external) {
+            currentFile.set(suppression.fileName);
+            modifyGuidelinesBasedOnSuppressionComments(Collections.singletonList(suppression));
+        }
+        allComments.addAll(external);
+        currentFile.remove();
+        for (WarningParser tool : otherTools)
+            addError(tool.getErrorCode());
+        if (correlateSuppressions)
+            correlateSuppressions(allComments);
+        if (scan.cache != null)
+            writeScanCache(scan.cache, filesToParse);
+        if (scan.sharedCache != null)
+            closeSharedScanCache(scan.sharedCache, filesToParse.size());
         generateSuppressionReport(allComments);
     }
 
+    /**
+     * Matches each violation whose line is known against the suppressions
+     * covering that line, and counts the matches of each suppression. The
+     * violations, their counts and the statuses of the guidelines are left as the
+     * tool reported them, since the lines of a suppression are only estimated.
+     */
+    private void correlateSuppressions(List<CommentProperties> comments) {
+        String root = workspace.getRemote();
+        Map<String, String> normalizedNames = new HashMap<String, String>();
+        for (int i = 0; i < violations.size(); i++)
+            if (violations.getLineNumber(i) > 0 && !normalizedNames.containsKey(violations.getFileName(i)))
+                normalizedNames.put(violations.getFileName(i),
+                        IncrementalState.normalizePath(violations.getFileName(i), root));
+        Set<String> violatedFiles = new HashSet<String>(normalizedNames.values());
+        SuppressionIndex index = new SuppressionIndex(guidelineTable.length);
+        List<Suppression> suppressions = new ArrayList<Suppression>();
+        for (CommentProperties comment : comments) {
+            if (comment.isNonMisra || comment.firstLineNumber < 0)
+                continue;
+            List<String> fileNames;
+            if (comment.filePattern != null) {
+                fileNames = matchingFiles(comment.filePattern, violatedFiles, root);
+            } else {
+                String fileName = IncrementalState.normalizePath(comment.fileName, root);
+                if (previousState != null && !changedFiles.contains(fileName))
+                    continue; // The warnings of the file are not read, so nothing can match
+                fileNames = Collections.singletonList(fileName);
+            }
+            for (Suppression suppression : comment.suppressions.values()) {
+                int guidelineIndex = guidelineIndex(suppression.guidelineId);
+                if (guidelineIndex < 0)
+                    continue;
+                suppression.matchedWarnings = 0;
+                suppressions.add(suppression);
+                for (String fileName : fileNames)
+                    index.add(fileName, guidelineIndex, comment.firstLineNumber, comment.lastLineNumber,
+                            suppression);
+            }
+        }
+        index.build();
+        int matched = 0;
+        for (int i = 0; i < violations.size(); i++) {
+            int lineNumber = violations.getLineNumber(i);
+            if (lineNumber <= 0)
+                continue;
+            String fileName = normalizedNames.get(violations.getFileName(i));
+            SuppressionIndex.Ranges[] fileRanges = index.rangesOf(fileName);
+            int guidelineIndex = violations.getGuidelineIndex(i);
+            if (fileRanges == null || fileRanges[guidelineIndex] == null)
+                continue;
+            Suppression suppression = fileRanges[guidelineIndex].find(lineNumber);
+            if (suppression == null)
+                continue;
+            suppression.matchedWarnings++;
+            matched++;
+        }
+        usedSuppressionCount = 0;
+        for (Suppression suppression : suppressions)
+            if (suppression.matchedWarnings > 0)
+                usedSuppressionCount++;
+        staleSuppressionCount = suppressions.size() - usedSuppressionCount;
+        log(matched + " warnings matched " + usedSuppressionCount + " suppressions, "
+                + staleSuppressionCount + " suppressions matched no warning");
+    }
+
+    /**
+     * @return The files among the given ones matching a pattern of a suppressions
+     *         file, where "*" matches any text and "?" any character
+     */
+    private static List<String> matchingFiles(String filePattern, Set<String> fileNames, String root) {
+        String pattern = IncrementalState.normalizePath(filePattern, root);
+        StringBuilder regex = new StringBuilder();
+        for (String part : pattern.split("(?=[*?])|(?<=[*?])")) {
+            if (part.equals("*"))
+                regex.append(".*");
+            else if (part.equals("?"))
+                regex.append('.');
+            else if (!part.isEmpty())
+                regex.append(Pattern.quote(part));
+        }
+        Pattern compiled = Pattern.compile(regex.toString());
+        List<String> matching = new ArrayList<String>();
+        for (String fileName : fileNames)
+            if (compiled.matcher(fileName).matches())
+                matching.add(fileName);
+        return matching;
+    }
+
+    /**
+     * Starts the state of this build with the violations read from the warnings,
+     * and adds the violations of the unchanged files from the earlier build
+     */
+    private void startIncrementalState(String fingerprint, List<String> filesToParse) {
+        incrementalState = new IncrementalState(fingerprint);
+        incrementalState.addViolationsFrom(fileViolations);
+        if (previousState == null)
+            return;
+        for (Map.Entry<String, Map<String, Integer>> file : previousState.getViolations().entrySet()) {
+            if (file.getKey().isEmpty() || changedFiles.contains(file.getKey()))
+                continue;
+            for (Map.Entry<String, Integer> count : file.getValue().entrySet()) {
+                int index = guidelineIndex(count.getKey());
+                if (index >= 0) {
+                    addViolations(index, count.getValue());
+                    for (int i = 0; i < count.getValue(); i++)
+                        violations.add(index, file.getKey(), 0);
+                    incrementalState.addViolations(file.getKey(), count.getKey(), count.getValue());
+                }
+            }
+        }
+        int changed = 0;
+        for (String filename : filesToParse)
+            if (changedFiles.contains(IncrementalState.normalizePath(filename, workspace.getRemote())))
+                changed++;
+        log("Incremental analysis: " + changed + " of " + filesToParse.size()
+                + " source files changed since the earlier build");
+    }
+
+    /**
+     * @return The cache of earlier scans, an empty cache if there is none or it
+     *         cannot be read, or null if no cache file is set
+     */
+    private SourceScanCache readScanCache(String fingerprint) {
+        if (scanCacheFilePath == null || scanCacheFilePath.isEmpty())
+            return null;
+        FilePath file = workspace.child(scanCacheFilePath);
+        try {
+            if (file.exists()) {
+                try (InputStream in = file.read()) {
+                    return SourceScanCache.read(in, fingerprint);
+                }
+            }
+        } catch (IOException | InterruptedException ex) {
+            log("Could not read the scan cache \"" + scanCacheFilePath + "\". All source files will be scanned.");
+        }
+        return new SourceScanCache(fingerprint);
+    }
+
+    private void writeScanCache(SourceScanCache cache, List<String> scannedFiles) {
+        log(cache.getHits() + " of " + scannedFiles.size() + " source files were unchanged since the last scan");
+        cache.retainAll(scannedFiles);
+        try (OutputStream out = workspace.child(scanCacheFilePath).write()) {
+            cache.write(out);
+        } catch (IOException | InterruptedException ex) {
+            log("Could not write the scan cache \"" + scanCacheFilePath + "\"");
+        }
+    }
+
+    /**
+     * @return The shared cache, or null if no shared cache directory is set
+     */
+    private SharedScanCache openSharedScanCache(String fingerprint) {
+        if (sharedScanCacheDirectory == null)
+            return null;
+        return new SharedScanCache(sharedScanCacheDirectory, sharedScanCacheMaxBytes, fingerprint);
+    }
+
+    private void closeSharedScanCache(SharedScanCache sharedCache, int fileCount) {
+        log(sharedCache.getHits() + " of " + fileCount + " source files were found in the shared scan cache");
+        int evicted = sharedCache.evict();
+        if (evicted > 0)
+            log("Removed " + evicted + " least recently used entries from the shared scan cache");
+    }
+
+    /**
+     * Finds the suppression comments of this parser's tool and of the other tools
+     * in each source file, using the caches to avoid reading and lexing files
+     * that were scanned before. It is used by several threads at once.
+     */
+    private final class SourceScan {
+        final List<WarningParser> otherTools;
+        /** Cache of this workspace, or null */
+        final SourceScanCache cache;
+        /** Cache shared with other workspaces, or null */
+        final SharedScanCache sharedCache;
+
+        SourceScan(List<WarningParser> otherTools, SourceScanCache cache, SharedScanCache sharedCache) {
+            this.otherTools = otherTools;
+            this.cache = cache;
+            this.sharedCache = sharedCache;
+        }
+
+        /**
+         * @return The path of the file in the incremental state
+         */
+        String stateFileName(String fileName) {
+            return IncrementalState.normalizePath(fileName, workspace.getRemote());
+        }
+
+        /**
+         * @return The suppression comments in the file, or null if the file could
+         *         not be read. They are taken from the earlier build if the file is
+         *         unchanged, otherwise from the workspace cache if the size
+         *         and modification time of the file are unchanged, and files that
+         *         had to be scanned are added to the cache.
+         */
+        List<CommentProperties> scan(String fileName) {
+            if (previousState != null) {
+                String stateFileName = stateFileName(fileName);
+                List<CommentProperties> comments = previousState.getComments(stateFileName);
+                if (comments != null && !changedFiles.contains(stateFileName))
+                    return comments;
+            }
+            if (cache == null)
+                return scanUncached(fileName);
+            FilePath file = workspace.child(fileName);
+            long size;
+            long lastModified;
+            try {
+                size = file.length();
+                lastModified = file.lastModified();
+            } catch (IOException | InterruptedException e) {
+                return scanUncached(fileName);
+            }
+            List<CommentProperties> comments = cache.get(fileName, size, lastModified);
+            if (comments == null) {
+                comments = scanUncached(fileName);
+                if (comments != null)
+                    cache.put(fileName, size, lastModified, comments);
+            }
+            return comments;
+        }
+
+        /**
+         * Scans a file that is not in the workspace cache. If there is a shared
+         * cache, the file is read and its content looked up there before it is
+         * lexed.
+         */
+        private List<CommentProperties> scanUncached(String fileName) {
+            if (sharedCache == null) {
+                if (otherTools.isEmpty())
+                    return pairBlocks(parseSourceFile(fileName));
+                return pairBlocks(parseSourceFile(fileName, otherTools));
+            }
+            byte[] bytes;
+            try (InputStream in = workspace.child(fileName).read()) {
+                bytes = readAllBytes(in);
+            } catch (IOException | InterruptedException e) {
+                return null;
+            }
+            String key = sharedCache.key(bytes);
+            List<CommentProperties> comments = sharedCache.get(key, fileName);
+            if (comments == null) {
+                comments = scanContent(fileName, new String(bytes, Charset.defaultCharset()));
+                sharedCache.put(key, comments);
+            }
+            return comments;
+        }
+
+        private List<CommentProperties> scanContent(String fileName, String fileContent) {
+            List<CommentProperties> commentProperties = new ArrayList<CommentProperties>();
+            addSuppressionComments(commentProperties, fileName, fileContent, 0);
+            for (WarningParser tool : otherTools)
+                addSuppressionComments(tool, commentProperties, fileName, fileContent, 0);
+            return pairBlocks(commentProperties);
+        }
+    }
+
+    private static byte[] readAllBytes(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) > 0)
+            bytes.write(buffer, 0, read);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Scans each file on its own in a pool of {@link #getParallelism()} threads.
+     * The results are returned in the same order as the files, so that they can
+     * be merged into the guideline statuses exactly as in a sequential scan.
+     * Files that could not be scanned because the thread was interrupted are
+     * returned as null, i.e. as unreadable.
+     */
+    private List<List<CommentProperties>> scanSourceFilesInParallel(List<String> filesToParse,
+            final SourceScan scan) {
+        List<Callable<List<CommentProperties>>> tasks = new ArrayList<Callable<List<CommentProperties>>>(
+                filesToParse.size());
+        for (final String filename : filesToParse) {
+            tasks.add(new Callable<List<CommentProperties>>() {
+                @Override
+                public List<CommentProperties> call() {
+                    currentFile.set(filename);
+                    try {
+                        return scan.scan(filename);
+                    } finally {
+                        currentFile.remove();
+                    }
+                }
+            });
+        }
+        List<List<CommentProperties>> scannedFiles = new ArrayList<List<CommentProperties>>(filesToParse.size());
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (Future<List<CommentProperties>> future : pool.invokeAll(tasks))
+                scannedFiles.add(future.get());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            throw new IllegalStateException(ex.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        while (scannedFiles.size() < filesToParse.size())
+            scannedFiles.add(null);
+        return scannedFiles;
+    }
+
     private void generateSuppressionReport(List<CommentProperties> comments) {
         if (logFilePath != null && !logFilePath.isEmpty()) {
             try (Writer writer = new OutputStreamWriter(workspace.child(logFilePath).write(),
@@ -451,7 +1510,7 @@ public abstract class WarningParser implements ExtensionPoint {
                         logNonMisraSuppression(props, writer);
                     } else {
                         for (Suppression suppression : props.suppressions.values()) {
-                            Category cat = guidelines.get(suppression.guidelineId).activeCategory();
+                            Category cat = findGuideline(suppression.guidelineId).activeCategory();
                             String guidelineString = suppression.guidelineId + " (" + cat + ")";
                             if (suppression.isFalsePositive) {
                                 writer.write(props.fileName + ":" + props.lineNumber + ": info: Suppression of "
@@ -464,6 +1523,13 @@ public abstract class WarningParser implements ExtensionPoint {
                                 writer.write(props.fileName + ":" + props.lineNumber + ": " + infoString
                                         + ": Violation of " + guidelineString + "\n");
                             }
+                            if (suppression.matchedWarnings == 0)
+                                writer.write(props.fileName + ":" + props.lineNumber + ": warning: Suppression of "
+                                        + suppression.guidelineId + " matches no warning\n");
+                            else if (suppression.matchedWarnings > 0)
+                                writer.write(props.fileName + ":" + props.lineNumber + ": info: Suppression of "
+                                        + suppression.guidelineId + " matches " + suppression.matchedWarnings
+                                        + (suppression.matchedWarnings == 1 ? " warning\n" : " warnings\n"));
                         }
                     }
                 }
@@ -479,7 +1545,7 @@ public abstract class WarningParser implements ExtensionPoint {
         writer.write(props.fileName + ":" + props.lineNumber + ": " + warningLevel
                 + ": Tool suppression comment tagged as not MISRA relevant");
         if (props.suppressions.size() > 0) {
-            writer.write(", but " + name() + " indicates that this comment suppresses ");
+            writer.write(", but " + (props.toolName != null ? props.toolName : name()) + " indicates that this comment suppresses ");
             int remaining = props.suppressions.size();
             for (Suppression suppression : props.suppressions.values()) {
                 writer.write(suppression.guidelineId);
@@ -495,14 +1561,16 @@ public abstract class WarningParser implements ExtensionPoint {
 
     private void modifyGuidelinesBasedOnSuppressionComments(List<CommentProperties> comments) {
         for (CommentProperties commentProperties : comments) {
-            if (!commentProperties.isNonMisra)// Ignore non-misra suppression comments
+            if (commentProperties.unresolvedComment != null)
+                handleCouldNotDetermineWhichGuidelineIsSuppressed(commentProperties.unresolvedComment);
+            else if (!commentProperties.isNonMisra)// Ignore non-misra suppression comments
                 for (Suppression suppression : commentProperties.suppressions.values())
                     modifyGuidelineBasedOnComment(suppression);
         }
     }
 
     private void modifyGuidelineBasedOnComment(Suppression comment) {
-        Guideline guideline = guidelines.get(comment.guidelineId);
+        Guideline guideline = findGuideline(comment.guidelineId);
         if (guideline != null)
             setComplianceStatusFromComment(comment, guideline);
         else
@@ -548,7 +1616,7 @@ public abstract class WarningParser implements ExtensionPoint {
             if (symbols.length == 0 || symbols[0].trim().length() == 0)
                 continue;
             String guidelineId = symbols[0].trim();
-            Guideline guideline = guidelines.get(guidelineId);
+            Guideline guideline = findGuideline(guidelineId);
             if (guideline == null) {
                 handleGuidelineInGrpNotFound(guidelineId);
                 continue;
@@ -582,32 +1650,32 @@ public abstract class WarningParser implements ExtensionPoint {
     }
 
     private void handleIllegalRecategorization(Guideline guideline, Category category) {
-        errorCode |= ERR_GRP_ERROR;
+        addError(ERR_GRP_ERROR);
         log("Illegal recategorization of " + guideline.getId() + ": Cannot recategorize " + guideline.getCategory()
                 + " guideline to " + category);
     }
 
     private void handleUnknownComplianceCategory(String newCategoryString) {
-        errorCode |= ERR_GRP_ERROR;
+        addError(ERR_GRP_ERROR);
         log("\"" + newCategoryString
                 + "\" in the guideline recategorization plan (GRP) was not recognized as a valid MISRA compliance category");
     }
 
     private void handleMisformedGrpLine(String line) {
-        errorCode |= ERR_GRP_ERROR;
+        addError(ERR_GRP_ERROR);
         log("The line \"" + line
                 + "\" in the GRP file is not a valid recategorization. Each line should contain a guideline ID followed by the new category, separated by a comma, e.g \"Rule 1.1, required\"");
     }
 
     private void handleCouldNotDetermineWhichGuidelineIsSuppressed(String comment) {
 
-        errorCode |= ERR_COULD_NOT_DETERMINE_SUPPRESSED_GUIDELINE;
-        log(currentFile + ": Could not determine which guideline is suppressed by the comment \"" + comment
+        addError(ERR_COULD_NOT_DETERMINE_SUPPRESSED_GUIDELINE);
+        log(currentFile.get() + ": Could not determine which guideline is suppressed by the comment \"" + comment
                 + "\". Please add a tag in the style GUIDELINE(<guideline id>) or NONMISRA to the comment in order to avoid this error.");
     }
 
     private void handleGuidelineInGrpNotFound(String guidelineId) {
-        errorCode |= ERR_GRP_ERROR;
+        addError(ERR_GRP_ERROR);
         log("The guideline \"" + guidelineId
                 + "\" was found in the guideline recategorization plan (GRP), but no corresponding guideline "
                 + "was found in the current MISRA rule set.");
@@ -616,40 +1684,55 @@ public abstract class WarningParser implements ExtensionPoint {
     private void handleGuidelineFromWarningNotFound(Violation v) {
         log(name() + " warns about the guideline \"" + v.guidelineId + "\" in file \"" + v.fileName
                 + "\", but no such guideline is found in the selected MISRA version.");
-        errorCode |= ERR_GUIDELINE_NOT_FOUND;
+        addError(ERR_GUIDELINE_NOT_FOUND);
     }
 
     private void handleSuppressedGuidelineNotFound(String guidelineId) {
-        log(currentFile + ": Suppression comment for the guideline " + guidelineId
+        log(currentFile.get() + ": Suppression comment for the guideline " + guidelineId
                 + ", but the guideline was not found.");
-        errorCode |= ERR_GUIDELINE_NOT_FOUND;
+        addError(ERR_GUIDELINE_NOT_FOUND);
     }
 
     private void handleFalsePositiveNotFound(String guidelineId, String comment) {
-        log(currentFile + ": False positive tag found for the guideline " + guidelineId
+        log(currentFile.get() + ": False positive tag found for the guideline " + guidelineId
                 + ", but this guideline is not suppressed by the comment \"" + comment + "\".");
-        errorCode |= ERR_GUIDELINE_NOT_FOUND;
+        addError(ERR_GUIDELINE_NOT_FOUND);
     }
 
     private void handleDeviationNotFound(String guidelineId, String comment) {
-        log(currentFile + ": Deviation tag found for the guideline " + guidelineId
+        log(currentFile.get() + ": Deviation tag found for the guideline " + guidelineId
                 + ", but this guideline is not suppressed by the comment \"" + comment + "\".");
-        errorCode |= ERR_GUIDELINE_NOT_FOUND;
+        addError(ERR_GUIDELINE_NOT_FOUND);
     }
 
     private void handleAttemptToDeviateFromMandatoryGuideline(Guideline guideline) {
-        log(currentFile + ": " + guideline.getId() + " is mandatory, and deviations are illegal");
-        errorCode |= ERR_ILLEGAL_DEVIATION;
+        log(currentFile.get() + ": " + guideline.getId() + " is mandatory, and deviations are illegal");
+        addError(ERR_ILLEGAL_DEVIATION);
+    }
+
+    private void handleSuppressionsFileNotSupported(String fileName) {
+        addError(ERR_READ_FILE);
+        log(name() + " does not support suppressions files, so \"" + fileName + "\" was not read");
     }
 
     private void handleUnableToOpenSourceFile(String fileName) {
         log("Unable to open file \"" + fileName + "\"");
-        errorCode |= ERR_READ_FILE;
+        addError(ERR_READ_FILE);
     }
 
     private void handleCouldNotWriteLogFile() {
         log("Unable to write to logfile \"" + logFilePath + "\"");
-        errorCode |= ERR_WRITE_FILE;
+        addError(ERR_WRITE_FILE);
+    }
+
+    /**
+     * Adds an error to the error bitfield returned by {@link #getErrorCode()}. Safe
+     * to call while source files are scanned in parallel.
+     * 
+     * @param error One of the errorcodes starting with ERR_
+     */
+    protected final synchronized void addError(int error) {
+        errorCode |= error;
     }
 
     protected final void log(String s) {
@@ -756,6 +1839,119 @@ public abstract class WarningParser implements ExtensionPoint {
         this.logFilePath = logFilePath;
     }
 
+    public final String getScanCacheFilePath() {
+        return scanCacheFilePath;
+    }
+
+    /**
+     * Sets a file in the workspace in which the suppression comments of each
+     * source file are kept between builds. Files whose size and modification
+     * time are unchanged since the last scan are then not read again.
+     * 
+     * @param scanCacheFilePath Path relative to the workspace, or null or empty to
+     *                          scan all files every time
+     */
+    public final void setScanCacheFilePath(String scanCacheFilePath) {
+        this.scanCacheFilePath = scanCacheFilePath;
+    }
+
+    /**
+     * Makes {@link #parseSourceFiles(List, List)} match the warnings against the
+     * suppression comments covering their lines, to find the suppressions that
+     * are used and the stale ones that match no warning. The log file lists the
+     * number of warnings each suppression matched. The violations and the
+     * statuses of the guidelines are not changed. Suppressions only match
+     * warnings if the tool reports the warnings it suppressed, e.g. cppcheck
+     * without --inline-suppr.
+     * 
+     * @param correlateSuppressions true to correlate, false (the default) to
+     *                              assume that the warnings only contain
+     *                              violations that are not suppressed
+     */
+    public final void setCorrelateSuppressions(boolean correlateSuppressions) {
+        this.correlateSuppressions = correlateSuppressions;
+    }
+
+    /**
+     * @return The number of suppressions that matched at least one warning, if
+     *         the suppressions are correlated with the warnings
+     */
+    public final int getUsedSuppressionCount() {
+        return usedSuppressionCount;
+    }
+
+    /**
+     * @return The number of suppressions that matched no warning, if the
+     *         suppressions are correlated with the warnings
+     */
+    public final int getStaleSuppressionCount() {
+        return staleSuppressionCount;
+    }
+
+    /**
+     * Keeps the suppression comments and violations of each file, so that a later
+     * build can reuse them, see {@link #getIncrementalState()}. If the state of an
+     * earlier build is given, only the changed files are scanned and only their
+     * warnings are read; for all other files the data of the earlier build is
+     * used. Call this before reading any warnings.
+     * 
+     * @param previous     State of an earlier build with the same tools, see
+     *                     {@link IncrementalState#fingerprint(List)}, or null to
+     *                     scan all files
+     * @param changedFiles Files changed since the earlier build, relative to the
+     *                     workspace. Ignored if previous is null.
+     */
+    public final void setIncremental(IncrementalState previous, Collection<String> changedFiles) {
+        this.previousState = previous;
+        this.changedFiles = previous == null ? Collections.<String>emptySet()
+                : IncrementalState.normalizePaths(changedFiles, workspace.getRemote());
+        this.fileViolations = new IncrementalState("");
+    }
+
+    /**
+     * @return The suppression comments and violations of each file found by
+     *         {@link #parseSourceFiles(List, List)}, or null if they are not kept
+     */
+    public final IncrementalState getIncrementalState() {
+        return incrementalState;
+    }
+
+    public final File getSharedScanCacheDirectory() {
+        return sharedScanCacheDirectory;
+    }
+
+    /**
+     * Sets a directory on this machine in which the suppression comments of
+     * source files are kept by the hash of their content, so that files with the
+     * same content are only lexed once, whichever job or workspace they are in.
+     * The directory can be shared by concurrent builds.
+     * 
+     * @param directory The directory, or null to not use a shared cache
+     * @param maxBytes  The most disk space the cache may use. The least recently
+     *                  used entries are deleted when it is exceeded.
+     */
+    public final void setSharedScanCache(File directory, long maxBytes) {
+        this.sharedScanCacheDirectory = directory;
+        this.sharedScanCacheMaxBytes = maxBytes;
+    }
+
+    public final int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used to scan source files. With more than one
+     * thread, {@link #findSuppressionComments(String)} and
+     * {@link #getGuidelineIdsFromComment(String)} are called concurrently, so
+     * implementations must not modify shared state in these methods.
+     * 
+     * @param parallelism Number of threads. 1 or less scans all files on the
+     *                    calling thread.
+     */
+    public final void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
     public final FilePath getWorkspace() {
         return workspace;
     }
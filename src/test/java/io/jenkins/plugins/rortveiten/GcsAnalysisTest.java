@@ -0,0 +1,276 @@
+package io.jenkins.plugins.rortveiten;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
+import rortveiten.misra.CppcheckWarningParser;
+import rortveiten.misra.Guideline;
+import rortveiten.misra.Guideline.ComplianceStatus;
+import rortveiten.misra.PcLintWarningParser;
+import rortveiten.misra.ViolationStore.FileViolations;
+import rortveiten.misra.WarningParser.MisraVersion;
+
+public class GcsAnalysisTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private void write(String fileName, String content) throws Exception {
+        Files.write(new File(folder.getRoot(), fileName).toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeGzipped(String fileName, String content) throws Exception {
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(new File(folder.getRoot(), fileName)))) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Writes the content as a zstd frame holding one uncompressed block, which
+     * is enough to check that the frame is decoded.
+     */
+    private void writeZstd(String fileName, String content) throws Exception {
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+        int blockHeader = data.length << 3 | 1; // last block, raw, size
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[] { 0x28, (byte) 0xb5, 0x2f, (byte) 0xfd, 0x20, (byte) data.length,
+                (byte) blockHeader, (byte) (blockHeader >> 8), (byte) (blockHeader >> 16) });
+        out.write(data);
+        Files.write(new File(folder.getRoot(), fileName).toPath(), out.toByteArray());
+    }
+
+    private GcsAnalysis analysis(TaskListener listener) {
+        GcsAnalysis analysis = new GcsAnalysis(PcLintWarningParser.class, MisraVersion.C_2012, listener);
+        analysis.setWarningsFile("lint.txt");
+        analysis.setSourceListFile("sources.txt");
+        return analysis;
+    }
+
+    private Guideline find(GcsResult result, String id) {
+        for (Guideline guideline : result.getGuidelines())
+            if (guideline.getId().equals(id))
+                return guideline;
+        return null;
+    }
+
+    @Test
+    public void runsTheWholeAnalysisOnTheWorkspace() throws Exception {
+        write("lint.txt", "main.c(3): Note 9029: Mismatched [MISRA 2012 Rule 10.4, required]\n");
+        write("sources.txt", "main.c\n");
+        write("main.c", "int a;\nint b; /*lint -e9029 DEVIATION(D1) */\n");
+
+        GcsResult result = analysis(TaskListener.NULL).invoke(folder.getRoot(), null);
+
+        assertFalse(result.isReadFailed());
+        assertEquals(0, result.getErrorCode());
+        assertEquals(ComplianceStatus.VIOLATIONS, find(result, "Rule 10.4").getStatus());
+        assertFalse(result.isCompliant());
+    }
+
+    @Test
+    public void combinesWarningsAndCommentsOfSeveralTools() throws Exception {
+        write("lint.txt", "main.c(3): Note 9029: Mismatched [MISRA 2012 Rule 10.4, required]\n");
+        write("cppcheck.txt", "[main.c:4] (style) Identifiers shall be distinct [misra-c2012-5.2]\n");
+        write("sources.txt", "main.c\n");
+        write("main.c", "int a; /*lint -e9029 DEVIATION(D1) */\nint b; // cppcheck-suppress misra-c2012-8.4\n");
+        GcsAnalysis analysis = analysis(TaskListener.NULL);
+        analysis.addTool(CppcheckWarningParser.class, "cppcheck.txt");
+
+        GcsResult result = analysis.invoke(folder.getRoot(), null);
+
+        assertEquals(0, result.getErrorCode());
+        assertEquals(ComplianceStatus.VIOLATIONS, find(result, "Rule 10.4").getStatus());
+        assertEquals(ComplianceStatus.VIOLATIONS, find(result, "Rule 5.2").getStatus());
+        assertEquals(ComplianceStatus.VIOLATIONS, find(result, "Rule 8.4").getStatus());
+        assertEquals(ComplianceStatus.COMPLIANT, find(result, "Rule 1.1").getStatus());
+    }
+
+    @Test
+    public void readsSuppressionsFileOfAdditionalTool() throws Exception {
+        write("lint.txt", "");
+        write("cppcheck.txt", "[main.c:1] (style) Identifiers shall be distinct [misra-c2012-5.2]\n");
+        write("sources.txt", "main.c\n");
+        write("main.c", "int a;\n");
+        write("suppressions.txt", "# Deviations\n\nmisra-c2012-5.2:main.c # DEVIATION(D1)\n"
+                + "misra-c2012-8.4:main.c # DEVIATION(D2)\n");
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        GcsAnalysis analysis = analysis(new StreamTaskListener(log));
+        analysis.addTool(CppcheckWarningParser.class, "cppcheck.txt", "suppressions.txt");
+        analysis.setCorrelateSuppressions(true);
+
+        GcsResult result = analysis.invoke(folder.getRoot(), null);
+
+        assertFalse(result.isReadFailed());
+        assertEquals(0, result.getErrorCode());
+        // The warning of Rule 5.2 is kept although the deviation matches it
+        assertEquals(ComplianceStatus.VIOLATIONS, find(result, "Rule 5.2").getStatus());
+        assertEquals(1, result.getViolationCounts()[result.getGuidelines().indexOf(find(result, "Rule 5.2"))]);
+        assertEquals(ComplianceStatus.DEVIATIONS, find(result, "Rule 8.4").getStatus());
+        assertEquals(0, result.getViolationCounts()[result.getGuidelines().indexOf(find(result, "Rule 8.4"))]);
+        assertTrue(log.toString("UTF-8")
+                .contains("1 warnings matched 1 suppressions, 1 suppressions matched no warning"));
+    }
+
+    @Test
+    public void reportsReadFailureForMissingWarningsOfAdditionalTool() throws Exception {
+        write("lint.txt", "");
+        write("sources.txt", "main.c\n");
+        GcsAnalysis analysis = analysis(TaskListener.NULL);
+        analysis.addTool(CppcheckWarningParser.class, "cppcheck.txt");
+
+        assertTrue(analysis.invoke(folder.getRoot(), null).isReadFailed());
+    }
+
+    @Test
+    public void reusesStateOfEarlierBuildForUnchangedFiles() throws Exception {
+        write("lint.txt", "main.c(3): Note 9029: Mismatched [MISRA 2012 Rule 10.4, required]\n");
+        write("sources.txt", "main.c\nother.c\n");
+        write("main.c", "int a;\n");
+        write("other.c", "int b;\n");
+        GcsAnalysis first = analysis(TaskListener.NULL);
+        first.setIncremental("gcs.state", null);
+        first.invoke(folder.getRoot(), null);
+        write("lint.txt", "other.c(1): Note 9050: [MISRA 2012 Rule 12.1, advisory]\n");
+        write("changed.txt", "other.c\n");
+        GcsAnalysis second = analysis(TaskListener.NULL);
+        second.setIncremental("gcs.state", "changed.txt");
+
+        GcsResult result = second.invoke(folder.getRoot(), null);
+
+        assertEquals(ComplianceStatus.VIOLATIONS, find(result, "Rule 10.4").getStatus());
+        assertEquals(ComplianceStatus.VIOLATIONS, find(result, "Rule 12.1").getStatus());
+    }
+
+    @Test
+    public void findsSourceFilesByPattern() throws Exception {
+        write("lint.txt", "");
+        write("sources.txt", "main.c\n");
+        write("main.c", "int a; /*lint -e9029 */\n");
+        write("other.c", "int b; /*lint -e9050 */\n");
+        GcsAnalysis analysis = analysis(TaskListener.NULL);
+        analysis.setSourceFilePatterns("*.c", null);
+
+        GcsResult result = analysis.invoke(folder.getRoot(), null);
+
+        assertEquals(ComplianceStatus.VIOLATIONS, find(result, "Rule 10.4").getStatus());
+        assertEquals(ComplianceStatus.VIOLATIONS, find(result, "Rule 12.1").getStatus());
+    }
+
+    @Test
+    public void countsViolationsOfEachGuidelineAndFile() throws Exception {
+        write("lint.txt", "main.c(3): Note 9029: Mismatched [MISRA 2012 Rule 10.4, required]\n"
+                + "main.c(8): Note 9029: Mismatched [MISRA 2012 Rule 10.4, required]\n"
+                + "other.c(1): Note 9050: [MISRA 2012 Rule 12.1, advisory]\n");
+        write("sources.txt", "main.c\n");
+        write("main.c", "int a;\n");
+
+        GcsResult result = analysis(TaskListener.NULL).invoke(folder.getRoot(), null);
+
+        assertEquals(2, result.getViolationCounts()[result.getGuidelines().indexOf(find(result, "Rule 10.4"))]);
+        FileViolations main = result.getFileViolations().get(0);
+        assertEquals("main.c", main.getFileName());
+        assertEquals(2, main.getViolationCount());
+        assertEquals("3, 8", main.getGuidelines().get(0).getLines());
+        assertEquals("other.c", result.getFileViolations().get(1).getFileName());
+    }
+
+    @Test
+    public void usesCompilationDatabaseAsSourceList() throws Exception {
+        write("lint.txt", "");
+        write("main.c", "int a; /*lint -e9029 */\n");
+        String root = folder.getRoot().getAbsolutePath().replace('\\', '/');
+        write("compile_commands.json", "[{\"directory\": \"" + root + "/build\", \"file\": \"../main.c\"},"
+                + " {\"directory\": \"" + root + "\", \"file\": \"main.c\", \"arguments\": [\"cc\", \"-DX\"]}]");
+        GcsAnalysis analysis = analysis(TaskListener.NULL);
+        analysis.setSourceListFile("compile_commands.json");
+
+        GcsResult result = analysis.invoke(folder.getRoot(), null);
+
+        assertFalse(result.isReadFailed());
+        assertEquals(ComplianceStatus.VIOLATIONS, find(result, "Rule 10.4").getStatus());
+    }
+
+    @Test
+    public void reportsReadFailureForMissingFiles() throws Exception {
+        write("sources.txt", "main.c\n");
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+
+        GcsResult result = analysis(new StreamTaskListener(log)).invoke(folder.getRoot(), null);
+
+        assertTrue(result.isReadFailed());
+        assertTrue(log.toString("UTF-8").contains("Misra GCS plugin: File not found:"));
+    }
+
+    @Test
+    public void readsGzippedWarningsAndSourceList() throws Exception {
+        writeGzipped("lint.txt", "main.c(3): Note 9029: Mismatched [MISRA 2012 Rule 10.4, required]\n");
+        writeGzipped("sources.txt", "main.c\n");
+        write("main.c", "int a;\n");
+
+        GcsResult result = analysis(TaskListener.NULL).invoke(folder.getRoot(), null);
+
+        assertFalse(result.isReadFailed());
+        assertEquals(0, result.getErrorCode());
+        assertEquals(ComplianceStatus.VIOLATIONS, find(result, "Rule 10.4").getStatus());
+    }
+
+    @Test
+    public void readsZstdCompressedWarningsAndSourceList() throws Exception {
+        writeZstd("lint.txt", "main.c(3): Note 9029: Mismatched [MISRA 2012 Rule 10.4, required]\n");
+        writeZstd("sources.txt", "main.c\n");
+        write("main.c", "int a;\n");
+
+        GcsResult result = analysis(TaskListener.NULL).invoke(folder.getRoot(), null);
+
+        assertFalse(result.isReadFailed());
+        assertEquals(0, result.getErrorCode());
+        assertEquals(ComplianceStatus.VIOLATIONS, find(result, "Rule 10.4").getStatus());
+    }
+
+    @Test
+    public void readsAllWarningsFilesMatchingPattern() throws Exception {
+        new File(folder.getRoot(), "lint/shard1").mkdirs();
+        new File(folder.getRoot(), "lint/shard2").mkdirs();
+        write("lint/shard1/out.txt", "main.c(3): Note 9029: Mismatched [MISRA 2012 Rule 10.4, required]\n");
+        writeGzipped("lint/shard2/out.txt", "main.c(4): Note 9029: Mismatched [MISRA 2012 Rule 10.4, required]\n"
+                + "main.c(5): Info 9050: Precedence [MISRA 2012 Rule 12.1, advisory]\n");
+        write("lint/notes.log", "main.c(6): Note 9029: Mismatched [MISRA 2012 Rule 1.3, required]\n");
+        write("sources.txt", "main.c\n");
+        write("main.c", "int a;\n");
+        GcsAnalysis analysis = analysis(TaskListener.NULL);
+        analysis.setWarningsFile("lint/**/*.txt");
+
+        GcsResult result = analysis.invoke(folder.getRoot(), null);
+
+        assertFalse(result.isReadFailed());
+        assertEquals(ComplianceStatus.VIOLATIONS, find(result, "Rule 10.4").getStatus());
+        assertEquals(ComplianceStatus.VIOLATIONS, find(result, "Rule 12.1").getStatus());
+        assertEquals(ComplianceStatus.COMPLIANT, find(result, "Rule 1.3").getStatus());
+    }
+
+    @Test
+    public void reportsReadFailureWhenNoFileMatchesPattern() throws Exception {
+        write("sources.txt", "main.c\n");
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        GcsAnalysis analysis = analysis(new StreamTaskListener(log));
+        analysis.setWarningsFile("lint/**/*.txt");
+
+        GcsResult result = analysis.invoke(folder.getRoot(), null);
+
+        assertTrue(result.isReadFailed());
+        assertTrue(log.toString("UTF-8").contains("No files match \"lint/**/*.txt\""));
+    }
+}
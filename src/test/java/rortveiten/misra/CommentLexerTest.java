@@ -0,0 +1,99 @@
+package rortveiten.misra;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CommentLexerTest {
+
+    private final List<String> comments = new ArrayList<String>();
+    private final List<Integer> lines = new ArrayList<Integer>();
+
+    private void lex(String source) {
+        CommentLexer.lex(source, new CommentLexer.CommentVisitor() {
+            @Override
+            public void visitComment(CharSequence text, int start, int end, int lineNumber, boolean isBlockComment) {
+                comments.add((isBlockComment ? "B:" : "L:") + text.subSequence(start, end));
+                lines.add(lineNumber);
+            }
+        });
+    }
+
+    @Test
+    public void findsLineAndBlockComments() {
+        lex("int a; // line\r\n/* block\n spans */ int b; //last");
+
+        assertEquals(3, comments.size());
+        assertEquals("L: line", comments.get(0));
+        assertEquals("B: block\n spans ", comments.get(1));
+        assertEquals("L:last", comments.get(2));
+    }
+
+    @Test
+    public void countsLines() {
+        lex("\n// one\n/* two\n\n*/ /* three */\n// four");
+
+        assertEquals(2, (int) lines.get(0));
+        assertEquals(3, (int) lines.get(1));
+        assertEquals(5, (int) lines.get(2));
+        assertEquals(6, (int) lines.get(3));
+    }
+
+    @Test
+    public void skipsCommentOpenersInLiterals() {
+        lex("char *s = \"// not \\\" /* a comment\"; char c = '\"'; char d = '/'; // comment");
+
+        assertEquals(1, comments.size());
+        assertEquals("L: comment", comments.get(0));
+    }
+
+    @Test
+    public void unterminatedLiteralEndsAtLineBreak() {
+        lex("#error don't do this\n// comment");
+
+        assertEquals(1, comments.size());
+        assertEquals(2, (int) lines.get(0));
+    }
+
+    @Test
+    public void quoteAfterDigitIsDigitSeparator() {
+        lex("int a = 1'000; // comment");
+
+        assertEquals(1, comments.size());
+    }
+
+    @Test
+    public void quoteInHexNumberIsDigitSeparator() {
+        lex("x = 0xFFFF'0000u; //lint !e9\ny = 0x1p-3f + .5'0; // two");
+
+        assertEquals(2, comments.size());
+        assertEquals("L:lint !e9", comments.get(0));
+    }
+
+    @Test
+    public void quoteAfterPrefixOpensCharacterLiteral() {
+        lex("char c = u8'a'; char d = L'/'; // comment");
+
+        assertEquals(1, comments.size());
+        assertEquals("L: comment", comments.get(0));
+    }
+
+    @Test
+    public void commentOpenersInsideCommentsAreIgnored() {
+        lex("/* // not a line comment */ // /* not a block comment");
+
+        assertEquals(2, comments.size());
+        assertEquals("B: // not a line comment ", comments.get(0));
+        assertEquals("L: /* not a block comment", comments.get(1));
+    }
+
+    @Test
+    public void ignoresUnterminatedBlockComment() {
+        lex("// one\n/* never closed");
+
+        assertEquals(1, comments.size());
+    }
+}
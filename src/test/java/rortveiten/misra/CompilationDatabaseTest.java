@@ -0,0 +1,41 @@
+package rortveiten.misra;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class CompilationDatabaseTest {
+
+    @Test
+    public void resolvesFilesAgainstDirectoryAndRemovesDuplicates() throws IOException {
+        String json = "[\n"
+                + "{\"directory\": \"/ws/build/debug\", \"command\": \"cc -g -c ../../src/a.c\", \"file\": \"../../src/a.c\"},\n"
+                + "{\"directory\": \"/ws/build/release\", \"arguments\": [\"cc\", \"-O2\", \"-c\", \"../../src/a.c\"],"
+                + " \"file\": \"../../src/a.c\", \"output\": \"a.o\"},\n"
+                + "{\"directory\": \"/ws\", \"file\": \"./src/b.c\"},\n"
+                + "{\"directory\": \"/elsewhere\", \"file\": \"/ws/src/a.c\"},\n"
+                + "{\"directory\": \"/elsewhere\", \"file\": \"lib/c.c\"}\n"
+                + "]";
+
+        assertEquals(Arrays.asList("src/a.c", "src/b.c", "/elsewhere/lib/c.c"),
+                CompilationDatabase.readSourceFiles(new StringReader(json), "/ws"));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsInvalidDatabase() throws IOException {
+        CompilationDatabase.readSourceFiles(new StringReader("{\"file\": \"a.c\"}"), "/ws");
+    }
+
+    @Test
+    public void normalizesPaths() {
+        assertEquals("/b/a.c", CompilationDatabase.normalize("/b/./x/../a.c"));
+        assertEquals("C:/ws/a.c", CompilationDatabase.normalize("C:\\ws\\build\\..\\a.c"));
+        assertEquals("../a.c", CompilationDatabase.normalize("../a.c"));
+        assertTrue(CompilationDatabase.isCompilationDatabase("build/compile_commands.json.gz"));
+        assertFalse(CompilationDatabase.isCompilationDatabase("sources.txt"));
+    }
+}
@@ -1,13 +1,26 @@
 package rortveiten.misra;
 
 import static org.junit.Assert.*;
+import static rortveiten.misra.TestGuidelines.indexOfGuideline;
+import static rortveiten.misra.TestGuidelines.statusOf;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import hudson.FilePath;
 
 import rortveiten.misra.CppcheckWarningParser;
+import rortveiten.misra.Guideline.ComplianceStatus;
 import rortveiten.misra.WarningParser;
 import rortveiten.misra.WarningParser.MisraVersion;
 import rortveiten.misra.WarningParser.Violation;
@@ -15,6 +28,9 @@ import rortveiten.misra.WarningParser.Violation;
 public class CppcheckWarningParserTest {
 
     CppcheckWarningParser parser = new CppcheckWarningParser();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
     
     @Test
     public void testParseWarningLine() {
@@ -29,7 +45,12 @@ public class CppcheckWarningParserTest {
         Violation violation = violations.get(0);
         assertEquals("Drivers/drvMCU.c", violation.fileName);
         assertEquals(36, violation.lineNumber);
-        assertEquals("Rule 15.6", violation.guidelineId);
+        assertEquals("Rule 15.6", parser.guidelineIdOf(violation));
+
+        //Test the id is kept for a guideline that is not found
+        violation = parser.parseWarningLine("[a.c:1]: (style) misra violation [misra-c2012-99.9]").get(0);
+        assertEquals(-1, violation.guidelineIndex);
+        assertEquals("Rule 99.9", violation.guidelineId);
     }
 
     @Test
@@ -69,6 +90,150 @@ public class CppcheckWarningParserTest {
         
     }
 
+    @Test
+    public void readsScopeAndIdsOfEachCommentForm() {
+        assertEquals(WarningParser.SuppressionScope.BLOCK_BEGIN,
+                parser.suppressionScope(" cppcheck-suppress-begin misra-c2012-5.2"));
+        assertEquals(WarningParser.SuppressionScope.BLOCK_END, parser.suppressionScope("cppcheck-suppress-end [misra-c2012-5.2]"));
+        assertEquals(WarningParser.SuppressionScope.FILE, parser.suppressionScope("cppcheck-suppress-file misra-c2012-5.2"));
+        assertEquals(WarningParser.SuppressionScope.UNKNOWN, parser.suppressionScope("cppcheck-suppress-macro misra-c2012-5.2"));
+        assertEquals(WarningParser.SuppressionScope.LINE_AND_NEXT, parser.suppressionScope("cppcheck-suppress misra-c2012-5.2"));
+        assertEquals(1, parser.findSuppressionComments("// cppcheck-suppress[misra-c2012-5.2]\n// cppcheck-suppressed\n").size());
+
+        Set<String> ids = parser.getGuidelineIdsFromComment(" cppcheck-suppress[misra-c2012-5.2, misra-c2012-8.4] text misra-c2012-1.1");
+
+        assertEquals(2, ids.size());
+        assertTrue(ids.contains("Rule 5.2"));
+        assertTrue(ids.contains("Rule 8.4"));
+        assertEquals(1, parser.getGuidelineIdsFromComment("cppcheck-suppress misra-c2012-5.2;misra-c2012-1.1").size());
+    }
+
+    private CppcheckWarningParser correlatingParser() {
+        CppcheckWarningParser correlating = new CppcheckWarningParser();
+        correlating.initialize(MisraVersion.C_2012);
+        correlating.setWorkspace(new FilePath(folder.getRoot()));
+        correlating.setLogger(null);
+        correlating.setLogFilePath("gcs.log");
+        correlating.setCorrelateSuppressions(true);
+        return correlating;
+    }
+
+    @Test
+    public void blockAndFileSuppressionsCoverTheirLines() throws IOException {
+        Files.write(new File(folder.getRoot(), "a.c").toPath(), ("// cppcheck-suppress-file misra-c2012-8.4\n"
+                + "// cppcheck-suppress-begin misra-c2012-5.2\n"
+                + "int a;\n"
+                + "// cppcheck-suppress-begin misra-c2012-5.2\n"
+                + "int b;\n"
+                + "// cppcheck-suppress-end misra-c2012-5.2\n"
+                + "int c;\n"
+                + "// cppcheck-suppress-end misra-c2012-5.2\n"
+                + "int d;\n"
+                + "// cppcheck-suppress-macro misra-c2012-20.7\n").getBytes(StandardCharsets.UTF_8));
+        CppcheckWarningParser correlating = correlatingParser();
+
+        correlating.parseWarnings(Arrays.asList("[a.c:3]: (style) misra violation [misra-c2012-5.2]",
+                "[a.c:5]: (style) misra violation [misra-c2012-5.2]",
+                "[a.c:7]: (style) misra violation [misra-c2012-5.2]",
+                "[a.c:9]: (style) misra violation [misra-c2012-5.2]",
+                "[a.c:100]: (style) misra violation [misra-c2012-8.4]"));
+        correlating.parseSourceFiles(Arrays.asList("a.c"));
+
+        assertEquals(5, correlating.getViolationStore().size());
+        assertEquals(4, correlating.getViolationCounts()[indexOfGuideline(correlating, "Rule 5.2")]);
+        assertEquals(1, correlating.getViolationCounts()[indexOfGuideline(correlating, "Rule 8.4")]);
+        assertEquals(ComplianceStatus.VIOLATIONS, statusOf(correlating, "Rule 5.2"));
+        assertEquals(ComplianceStatus.VIOLATIONS, statusOf(correlating, "Rule 8.4"));
+        assertEquals(3, correlating.getUsedSuppressionCount());
+        assertEquals(0, correlating.getStaleSuppressionCount());
+        String log = readLog();
+        assertTrue(log.contains("a.c:1: info: Suppression of Rule 8.4 matches 1 warning\n"));
+        // The inner block takes line 5, the outer one keeps lines 3 and 7
+        assertTrue(log.contains("a.c:2: info: Suppression of Rule 5.2 matches 2 warnings\n"));
+        assertTrue(log.contains("a.c:4: info: Suppression of Rule 5.2 matches 1 warning\n"));
+        assertFalse(log.contains("Suppression of Rule 20.7 matches"));
+    }
+
+    @Test
+    public void readsSuppressionsFile() throws IOException {
+        Files.write(new File(folder.getRoot(), "a.c").toPath(), "int a;\n".getBytes(StandardCharsets.UTF_8));
+        CppcheckWarningParser correlating = correlatingParser();
+        correlating.readSuppressionsFile("suppressions.txt", Arrays.asList("# Suppressions of the drivers",
+                "", "misra-c2012-5.2:*/drv*.c:12 // FALSE_POSITIVE", "misra-c2012-8.4:src/other.c",
+                "misra-c2012-15.6 # DEVIATION(D1)", "unusedFunction:src/a.c", "*:third_party/*"));
+
+        correlating.parseWarnings(Arrays.asList("[src/drvMCU.c:12]: (style) misra violation [misra-c2012-5.2]",
+                "[src/drvMCU.c:13]: (style) misra violation [misra-c2012-5.2]",
+                "[src/drvMCU.c:13]: (style) misra violation [misra-c2012-15.6]",
+                "[src/a.c:2]: (style) misra violation [misra-c2012-15.6]"));
+        correlating.parseSourceFiles(Arrays.asList("a.c"));
+
+        assertEquals(4, correlating.getViolationStore().size());
+        assertEquals(2, correlating.getViolationCounts()[indexOfGuideline(correlating, "Rule 5.2")]);
+        assertEquals(2, correlating.getViolationCounts()[indexOfGuideline(correlating, "Rule 15.6")]);
+        assertEquals(0, correlating.getViolationCounts()[indexOfGuideline(correlating, "Rule 8.4")]);
+        assertEquals(ComplianceStatus.VIOLATIONS, statusOf(correlating, "Rule 5.2"));
+        // A deviation does not hide the warnings it matches
+        assertEquals(ComplianceStatus.VIOLATIONS, statusOf(correlating, "Rule 15.6"));
+        assertEquals(2, correlating.getUsedSuppressionCount());
+        assertEquals(1, correlating.getStaleSuppressionCount());
+        assertEquals(0, correlating.getErrorCode());
+        String log = readLog();
+        assertTrue(log.contains("suppressions.txt:3: info: Suppression of Rule 5.2 matches 1 warning\n"));
+        assertTrue(log.contains("suppressions.txt:4: warning: Suppression of Rule 8.4 matches no warning\n"));
+        assertTrue(log.contains("suppressions.txt:5: info: Suppression of Rule 15.6 matches 2 warnings\n"));
+    }
+
+    private String readLog() throws IOException {
+        return new String(Files.readAllBytes(new File(folder.getRoot(), "gcs.log").toPath()),
+                StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    public void readsViolationsFromXmlResults() throws IOException {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<results version=\"2\">\n"
+                + "  <cppcheck version=\"1.90\"/>\n"
+                + "  <errors>\n"
+                + "    <error id=\"misra-c2012-15.6\" severity=\"style\" msg=\"misra violation\">\n"
+                + "      <location file=\"Drivers/drvMCU.c\" line=\"36\" column=\"5\"/>\n"
+                + "    </error>\n"
+                + "    <error id=\"misra-c2012-15.6\" severity=\"style\" msg=\"misra violation\">\n"
+                + "      <location file=\"Drivers/drvCAN.c\" line=\"12\"/>\n"
+                + "    </error>\n"
+                + "    <error id=\"misra-c2012-10.4\" severity=\"style\" msg=\"misra violation\"/>\n"
+                + "    <error id=\"nullPointer\" severity=\"error\" msg=\"Null pointer\">\n"
+                + "      <location file=\"Drivers/drvMCU.c\" line=\"40\"/>\n"
+                + "    </error>\n"
+                + "  </errors>\n"
+                + "</results>\n";
+        CppcheckWarningParser xmlParser = new CppcheckWarningParser();
+
+        xmlParser.parseWarnings(new StringReader(xml));
+
+        int[] counts = xmlParser.getViolationCounts();
+        assertEquals(2, counts[indexOfGuideline(xmlParser, "Rule 15.6")]);
+        assertEquals(1, counts[indexOfGuideline(xmlParser, "Rule 10.4")]);
+        assertEquals(ComplianceStatus.VIOLATIONS, xmlParser.getGuidelines().get(indexOfGuideline(xmlParser, "Rule 15.6")).getStatus());
+        assertEquals(ComplianceStatus.COMPLIANT, xmlParser.getGuidelines().get(indexOfGuideline(xmlParser, "Rule 1.1")).getStatus());
+        assertEquals(0, xmlParser.getErrorCode());
+    }
+
+    @Test
+    public void textResultsAreStillReadLineByLine() throws IOException {
+        CppcheckWarningParser textParser = new CppcheckWarningParser();
+
+        textParser.parseWarnings(new StringReader(
+                "[Drivers/drvMCU.c:36]: (style) misra violation [misra-c2012-15.6]\n<not xml>\n"));
+
+        assertEquals(1, textParser.getViolationCounts()[indexOfGuideline(textParser, "Rule 15.6")]);
+    }
+
+    @Test(expected = IOException.class)
+    public void malformedXmlIsReportedAsIOException() throws IOException {
+        new CppcheckWarningParser().parseWarnings(new StringReader("<?xml version=\"1.0\"?><results><errors>"));
+    }
+
     @Test
     public void testName() {
         assertEquals("Cppcheck", parser.name());
@@ -82,5 +247,4 @@ public class CppcheckWarningParserTest {
         assertEquals(1, supportedVersions.size());
         assertTrue(supportedVersions.contains(MisraVersion.C_2012));
     }
-
 }
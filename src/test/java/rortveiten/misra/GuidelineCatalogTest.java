@@ -0,0 +1,73 @@
+package rortveiten.misra;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import rortveiten.misra.Guideline.Category;
+import rortveiten.misra.Guideline.ComplianceStatus;
+import rortveiten.misra.WarningParser.MisraVersion;
+
+public class GuidelineCatalogTest {
+
+    @Test
+    public void catalogIsBuiltOncePerVersion() {
+        assertSame(GuidelineCatalog.get(MisraVersion.C_2012), GuidelineCatalog.get(MisraVersion.C_2012));
+        assertNotSame(GuidelineCatalog.get(MisraVersion.C_2012), GuidelineCatalog.get(MisraVersion.C_2004));
+        assertEquals(MisraVersion.C_2004, GuidelineCatalog.get(MisraVersion.C_2004).getMisraVersion());
+    }
+
+    @Test
+    public void readsIdsAndCategories() {
+        GuidelineCatalog catalog = GuidelineCatalog.get(MisraVersion.C_2012);
+
+        assertEquals(159, catalog.size());
+        assertEquals("Directive 2.1", catalog.getIds().get(1));
+        assertEquals("Rule 22.5", catalog.getIds().get(157));
+        assertEquals(Category.REQUIRED, catalog.getCategory(1));
+    }
+
+    @Test
+    public void findsIndexOfIdsAndPartsOfText() {
+        GuidelineCatalog catalog = GuidelineCatalog.get(MisraVersion.C_2012);
+
+        assertEquals(157, catalog.indexOf("Rule 22.5"));
+        assertEquals(1, catalog.indexOf("Directive 2.1"));
+        assertEquals(157, catalog.indexOf("Rule ", "[misra-c2012-22.5]", 13, 17));
+        assertEquals(157, catalog.indexOf("", "[MISRA 2012 Rule 22.5, required]", 12, 21));
+        assertEquals(-1, catalog.indexOf("Rule 22.55"));
+        assertEquals(-1, catalog.indexOf("Rule ", "22.", 0, 3));
+        for (int i = 0; i < catalog.size(); i++)
+            assertEquals(i, catalog.indexOf(catalog.getIds().get(i)));
+    }
+
+    @Test
+    public void mapsLintErrorsToGuidelines() {
+        GuidelineCatalog catalog = GuidelineCatalog.get(MisraVersion.CPP_2008);
+
+        List<String> ids = catalog.guidelinesForLintError(774);
+        assertEquals(3, ids.size());
+        assertTrue(ids.contains("Rule 0-1-1"));
+        assertNull(catalog.guidelinesForLintError(4444444));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void catalogCannotBeModified() {
+        GuidelineCatalog.get(MisraVersion.C_2012).getIds().add("Rule 99.1");
+    }
+
+    @Test
+    public void eachCallGivesNewGuidelines() {
+        GuidelineCatalog catalog = GuidelineCatalog.get(MisraVersion.C_2012);
+        List<Guideline> first = catalog.createGuidelines();
+        first.get(0).setStatus(ComplianceStatus.VIOLATIONS);
+
+        List<Guideline> second = catalog.createGuidelines();
+
+        assertNotSame(first.get(0), second.get(0));
+        assertEquals(ComplianceStatus.COMPLIANT, second.get(0).getStatus());
+        assertEquals(catalog.getCategory(0), second.get(0).getCategory());
+    }
+}
@@ -0,0 +1,97 @@
+package rortveiten.misra;
+
+import static org.junit.Assert.*;
+import static rortveiten.misra.TestGuidelines.statusOf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import hudson.FilePath;
+import rortveiten.misra.Guideline.ComplianceStatus;
+
+public class IncrementalStateTest {
+
+    private static final List<String> SOURCES = Arrays.asList("a.c", "b.c");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private void write(String fileName, String content) throws Exception {
+        Files.write(new File(folder.getRoot(), fileName).toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private PcLintWarningParser parser() {
+        PcLintWarningParser parser = new PcLintWarningParser();
+        parser.setWorkspace(new FilePath(folder.getRoot()));
+        parser.setLogger(null);
+        return parser;
+    }
+
+    private static IncrementalState roundTrip(IncrementalState state) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        state.write(out);
+        return IncrementalState.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    private IncrementalState fullBuild() throws Exception {
+        write("a.c", "int a; /*lint -e9031 */\n");
+        write("b.c", "int b; /*lint -e9029 DEVIATION(D1) */\n");
+        PcLintWarningParser parser = parser();
+        parser.setIncremental(null, Collections.<String>emptyList());
+        parser.parseWarnings(Arrays.asList(
+                new File(folder.getRoot(), "a.c").getPath() + "(1): Note 9050: [MISRA 2012 Rule 12.1, advisory]",
+                "b.c(1): Note 9029: Mismatched [MISRA 2012 Rule 10.4, required]"));
+        parser.parseSourceFiles(SOURCES);
+        return roundTrip(parser.getIncrementalState());
+    }
+
+    @Test
+    public void keepsViolationsAndCommentsOfEachFile() throws Exception {
+        IncrementalState state = fullBuild();
+
+        assertEquals(Integer.valueOf(1), state.getViolations().get("a.c").get("Rule 12.1"));
+        assertEquals(Integer.valueOf(1), state.getViolations().get("b.c").get("Rule 10.4"));
+        assertEquals(1, state.getComments("a.c").size());
+        assertTrue(state.getComments("b.c").get(0).suppressions.get("Rule 10.4").isDeviation);
+    }
+
+    @Test
+    public void onlyChangedFilesAreScannedAndReadFromWarnings() throws Exception {
+        IncrementalState previous = fullBuild();
+        // a.c is not listed as changed, so neither its content nor its warnings are read again
+        write("a.c", "int a;\n");
+        write("b.c", "int b;\n");
+        PcLintWarningParser parser = parser();
+        parser.setIncremental(previous, Arrays.asList("./b.c"));
+
+        parser.parseWarnings(Arrays.asList("a.c(1): Note 9034: [MISRA 2012 Rule 10.8, required]"));
+        parser.parseSourceFiles(SOURCES);
+
+        assertEquals(ComplianceStatus.VIOLATIONS, statusOf(parser, "Rule 12.1"));
+        assertEquals(ComplianceStatus.VIOLATIONS, statusOf(parser, "Rule 10.6"));
+        assertEquals(ComplianceStatus.COMPLIANT, statusOf(parser, "Rule 10.8"));
+        assertEquals(ComplianceStatus.COMPLIANT, statusOf(parser, "Rule 10.4"));
+        IncrementalState state = parser.getIncrementalState();
+        assertEquals(Integer.valueOf(1), state.getViolations().get("a.c").get("Rule 12.1"));
+        assertNull(state.getViolations().get("b.c"));
+        assertTrue(state.getComments("b.c").isEmpty());
+    }
+
+    @Test
+    public void normalizesPaths() {
+        assertEquals("src/a.c", IncrementalState.normalizePath("C:\\ws\\src\\a.c", "C:\\ws"));
+        assertEquals("src/a.c", IncrementalState.normalizePath("/ws/src/a.c", "/ws/"));
+        assertEquals("src/a.c", IncrementalState.normalizePath("./src/a.c", "/ws"));
+        assertEquals("/other/a.c", IncrementalState.normalizePath("/other/a.c", "/ws"));
+    }
+}
@@ -0,0 +1,86 @@
+package rortveiten.misra;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import rortveiten.misra.JsonPullParser.Token;
+
+public class JsonPullParserTest {
+
+    private JsonPullParser parser(String json) {
+        return new JsonPullParser(new StringReader(json));
+    }
+
+    @Test
+    public void readsObjectsArraysAndValues() throws IOException {
+        JsonPullParser json = parser(" { \"a\" : [1, -2.5e3, \"x\"], \"b\": true, \"c\": null } ");
+
+        json.beginObject();
+        assertEquals("a", json.nextName());
+        json.beginArray();
+        assertEquals(1, json.nextInt());
+        assertEquals(Token.NUMBER, json.peek());
+        assertEquals("-2.5e3", json.nextString());
+        assertEquals("x", json.nextString());
+        assertFalse(json.hasNext());
+        json.endArray();
+        assertEquals("b", json.nextName());
+        assertEquals(Token.BOOLEAN, json.peek());
+        json.skipValue();
+        assertEquals("c", json.nextName());
+        assertEquals(Token.NULL, json.peek());
+        json.skipValue();
+        json.endObject();
+        assertEquals(Token.END_DOCUMENT, json.peek());
+    }
+
+    @Test
+    public void decodesEscapes() throws IOException {
+        JsonPullParser json = parser("[\"a\\\"b\\\\c\\/d\\n\\u00e6\"]");
+
+        json.beginArray();
+        assertEquals("a\"b\\c/d\næ", json.nextString());
+    }
+
+    @Test
+    public void skipsNestedValues() throws IOException {
+        JsonPullParser json = parser("{\"skip\": {\"x\": [[], {}, [1, {\"y\": \"]}\"}]]}, \"keep\": 7}");
+
+        json.beginObject();
+        assertEquals("skip", json.nextName());
+        json.skipValue();
+        assertEquals("keep", json.nextName());
+        assertEquals(7, json.nextInt());
+        json.endObject();
+    }
+
+    @Test
+    public void readsValuesLongerThanBuffer() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++)
+            text.append((char) ('a' + i % 26));
+        JsonPullParser json = parser("[\"" + text + "\", 2]");
+
+        json.beginArray();
+        assertEquals(text.toString(), json.nextString());
+        assertEquals(2, json.nextInt());
+    }
+
+    @Test(expected = IOException.class)
+    public void missingCommaIsAnError() throws IOException {
+        JsonPullParser json = parser("[1 2]");
+        json.beginArray();
+        json.nextInt();
+        json.nextInt();
+    }
+
+    @Test(expected = IOException.class)
+    public void unterminatedDocumentIsAnError() throws IOException {
+        JsonPullParser json = parser("{\"a\": [1");
+        json.skipValue();
+    }
+}
@@ -111,4 +111,25 @@ public class LineNumberFinderTest {
         
     }
 
+    @Test
+    public void givesOffsetsOfPreviousMatch() {
+        LineNumberFinder lnf = new LineNumberFinder(testText);
+
+        lnf.findNext("SOMETHING");
+        lnf.findNext("SOMETHING");
+
+        assertEquals(testText.lastIndexOf("SOMETHING"), lnf.getStart());
+        assertEquals(testText.lastIndexOf("SOMETHING") + 9, lnf.getEnd());
+    }
+
+    @Test
+    public void findsLineOfAnyOffset() {
+        LineNumberFinder lnf = new LineNumberFinder(testText);
+
+        assertEquals(1, lnf.lineNumberAtCharNo(0));
+        assertEquals(2, lnf.lineNumberAtCharNo(testText.indexOf("which")));
+        assertEquals(6, lnf.lineNumberAtCharNo(testText.length()));
+        assertEquals(-1, lnf.lineNumberAtCharNo(testText.length() + 1));
+    }
+
 }
@@ -0,0 +1,25 @@
+package rortveiten.misra;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LruCacheTest {
+
+    @Test
+    public void dropsLeastRecentlyUsedEntry() {
+        LruCache<String, Integer> cache = new LruCache<String, Integer>(2);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+
+        cache.put("c", 3);
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("b"));
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        assertEquals(Integer.valueOf(3), cache.get("c"));
+        cache.clear();
+        assertNull(cache.get("a"));
+    }
+}
@@ -0,0 +1,119 @@
+package rortveiten.misra;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import rortveiten.misra.MappedSourceScanner.MarkedComment;
+
+public class MappedSourceScannerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final String content = "/* This is a C sourcefile\r\n spanning two lines */\r\n"
+            + "//This is not a suppression comment\r\n"
+            + "void dostuff(int hello)\r\n"
+            + "{\r\n"
+            + "    doOtherStuff(4);//lint -e493 What's going on\r\n"
+            + "}\r\n"
+            + "/*lint e589 a multiline comment\r\n"
+            + "is here\r\n"
+            + "*/ int b; /*  \r\nlint -e1 */\r\n"
+            + "// lint at the very end";
+
+    private List<MarkedComment> scan(String text) {
+        return new MappedSourceScanner("lint", StandardCharsets.UTF_8)
+                .scan(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void findsOnlyCommentsStartingWithMarker() {
+        List<MarkedComment> comments = scan(content);
+
+        assertEquals(4, comments.size());
+        assertEquals("//lint -e493 What's going on", comments.get(0).getText());
+        assertEquals("/*lint e589 a multiline comment\r\nis here\r\n*/", comments.get(1).getText());
+        assertEquals("/*  \r\nlint -e1 */", comments.get(2).getText());
+        assertEquals("// lint at the very end", comments.get(3).getText());
+    }
+
+    @Test
+    public void countsLinesInsideAndOutsideComments() {
+        List<MarkedComment> comments = scan(content);
+
+        assertEquals(6, comments.get(0).getLineNumber());
+        assertEquals(8, comments.get(1).getLineNumber());
+        assertEquals(10, comments.get(2).getLineNumber());
+        assertEquals(12, comments.get(3).getLineNumber());
+    }
+
+    @Test
+    public void ignoresUnterminatedComment() {
+        List<MarkedComment> comments = scan("//lint -e1\n/*lint -e2");
+
+        assertEquals(1, comments.size());
+        assertEquals("//lint -e1", comments.get(0).getText());
+    }
+
+    @Test
+    public void ignoresMarkersInStringLiterals() {
+        List<MarkedComment> comments = scan("char *s = \"//lint -e1\"; /*lint -e2 */\n");
+
+        assertEquals(1, comments.size());
+        assertEquals("/*lint -e2 */", comments.get(0).getText());
+    }
+
+    @Test
+    public void decodesOnlyMatchedCommentsWithCharset() {
+        List<MarkedComment> comments = scan("char *s = \"æøå\"; //lint -e1 blåbær\n");
+
+        assertEquals("//lint -e1 blåbær", comments.get(0).getText());
+    }
+
+    @Test
+    public void findsCommentsOfSeveralMarkersInOnePass() {
+        List<MarkedComment> comments = new MappedSourceScanner(Arrays.asList("lint", "cppcheck-suppress"),
+                StandardCharsets.UTF_8).scan(ByteBuffer.wrap(("int a; // cppcheck-suppress misra-c2012-5.2\n"
+                        + "int b; //lint -e9029\n").getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(2, comments.size());
+        assertEquals("// cppcheck-suppress misra-c2012-5.2", comments.get(0).getText());
+        assertEquals(1, comments.get(0).getMarkerIndex());
+        assertEquals(2, comments.get(1).getLineNumber());
+        assertEquals(0, comments.get(1).getMarkerIndex());
+    }
+
+    @Test
+    public void scansFile() throws Exception {
+        File file = folder.newFile("source.c");
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+
+        List<MarkedComment> comments = new MappedSourceScanner("lint", StandardCharsets.UTF_8).scan(file);
+
+        assertEquals(4, comments.size());
+        assertEquals(6, comments.get(0).getLineNumber());
+        assertTrue(file.delete());
+    }
+
+    @Test
+    public void scansMappedFile() throws Exception {
+        File file = folder.newFile("source.c");
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+
+        List<MarkedComment> comments = new MappedSourceScanner(Collections.singletonList("lint"), StandardCharsets.UTF_8, 0).scan(file);
+
+        assertEquals(4, comments.size());
+        assertEquals(6, comments.get(0).getLineNumber());
+    }
+}
@@ -0,0 +1,86 @@
+package rortveiten.misra;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures how many PC-lint warning lines per second each way of parsing them
+ * handles. Not run as part of the tests; run the main method by hand, e.g. from
+ * the IDE, with the number of lines as an optional argument.
+ */
+public class PcLintWarningParserBenchmark {
+
+    private static final String[] SAMPLE_LINES = {
+            "C:\\src\\drivers\\drvCAN.c(75): Note 9029: Mismatched essential type categories for binary operator [MISRA 2012 Rule 10.4, required]",
+            "C:\\src\\drivers\\drvCAN.c(79): Note 931: Both sides have side effects [MISRA 2012 Rule 1.3, required], [MISRA 2012 Rule 13.2, required]",
+            "C:\\src\\drivers\\drvCAN.c(50): Warning 551: Symbol 'canBaudRate' not accessed",
+            "C:\\src\\app\\main.c(112): Info 9050: dependence placed on operator precedence [MISRA 2012 Rule 12.1, advisory]", };
+
+    public static void main(String[] args) {
+        int lineCount = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        List<String> lines = new ArrayList<String>(lineCount);
+        for (int i = 0; i < lineCount; i++)
+            lines.add(SAMPLE_LINES[i % SAMPLE_LINES.length]);
+        final PcLintWarningParser parser = new PcLintWarningParser();
+
+        for (int round = 0; round < 3; round++) {
+            long compiledPerLine = run(lines, new LineParser() {
+                @Override
+                public int parse(String line) {
+                    return parseWithPatternsCompiledPerLine(line);
+                }
+            });
+            long precompiled = run(lines, new LineParser() {
+                @Override
+                public int parse(String line) {
+                    return parser.parseWarningLineWithRegex(line).size();
+                }
+            });
+            long fastPath = run(lines, new LineParser() {
+                @Override
+                public int parse(String line) {
+                    return parser.parseWarningLine(line).size();
+                }
+            });
+            System.out.println("Round " + (round + 1) + ":");
+            report("Patterns compiled per line", lineCount, compiledPerLine);
+            report("Precompiled patterns", lineCount, precompiled);
+            report("Field splitter", lineCount, fastPath);
+        }
+    }
+
+    private interface LineParser {
+        int parse(String line);
+    }
+
+    private static long run(List<String> lines, LineParser parser) {
+        long start = System.nanoTime();
+        int violations = 0;
+        for (String line : lines)
+            violations += parser.parse(line);
+        long elapsed = System.nanoTime() - start;
+        if (violations == 0)
+            throw new IllegalStateException("No violations found");
+        return elapsed;
+    }
+
+    private static void report(String name, int lineCount, long nanos) {
+        System.out.printf("  %-28s %8d ms %12.0f lines/s%n", name, nanos / 1000000, lineCount * 1e9 / nanos);
+    }
+
+    /** How lines were parsed before the patterns were precompiled */
+    private static int parseWithPatternsCompiledPerLine(String line) {
+        Pattern fullPattern = Pattern.compile("(.*?)\\((\\d+)\\): (?:Note|Info|Error|Warning) (\\d+): [^\\[]*\\[MISRA (?:2004 |2012 |C\\+\\+ )?([^,\\]]*)(:?, advisory|, required|, mandatory)?\\]");
+        Pattern misraPattern = Pattern.compile("\\[MISRA (?:2004 |2012 |C\\+\\+ )?([^,\\]]*)(:?, advisory|, required|, mandatory)?\\]");
+        Matcher lineMatcher = fullPattern.matcher(line);
+        int count = 0;
+        if (lineMatcher.find()) {
+            Matcher misraMatch = misraPattern.matcher(line);
+            while (misraMatch.find())
+                count++;
+        }
+        return count;
+    }
+}
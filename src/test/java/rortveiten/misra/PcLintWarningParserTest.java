@@ -1,22 +1,43 @@
 package rortveiten.misra;
 
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static rortveiten.misra.TestGuidelines.indexOfGuideline;
+import static rortveiten.misra.TestGuidelines.statusOf;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintStream;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
 import java.util.Set;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import hudson.FilePath;
+
+import rortveiten.misra.Guideline.ComplianceStatus;
+import rortveiten.misra.WarningParser.CommentProperties;
+import rortveiten.misra.WarningParser.CommentSpan;
 import rortveiten.misra.WarningParser.MisraVersion;
 import rortveiten.misra.WarningParser.Violation;
 
 public class PcLintWarningParserTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private String resourceContent() {
         return "/* This is a C sourefile */\r\n" + "\r\n" + "//This is not a suppression comment\r\n"
                 + "void dostuff(int hello)\r\n" + "{\r\n" + "    doOtherStuff(4);//lint -e493 What's going on\r\n"
@@ -37,6 +58,21 @@ public class PcLintWarningParserTest {
 		assertEquals("e589 a multiline comment\r\nis here\r\n", comments.get(1));
 	}
 	
+    @Test
+    public void findsSpansOfSuppressionComments() {
+        PcLintWarningParser parser = new PcLintWarningParser();
+        String content = resourceContent();
+
+        List<CommentSpan> spans = parser.findSuppressionCommentSpans(content);
+
+        assertEquals(2, spans.size());
+        assertEquals(content.indexOf("-e493"), spans.get(0).start);
+        assertEquals(content.indexOf("\r\n}"), spans.get(0).end);
+        assertEquals(6, spans.get(0).lineNumber);
+        assertEquals(content.indexOf("e589"), spans.get(1).start);
+        assertEquals(9, spans.get(1).lineNumber);
+    }
+
 	@Test
 	public void nameIsPcLint() {
 		PcLintWarningParser parser = new PcLintWarningParser();
@@ -51,7 +87,7 @@ public class PcLintWarningParserTest {
 		
 		assertEquals("C:\\UST3\\qse30\\Drivers\\drvCAN.c", vs.get(0).fileName);
 		assertEquals(75, vs.get(0).lineNumber);
-		assertEquals("Rule 10.4", vs.get(0).guidelineId);
+		assertEquals("Rule 10.4", parser.guidelineIdOf(vs.get(0)));
 	}
 	
 	@Test
@@ -70,9 +106,9 @@ public class PcLintWarningParserTest {
 		List<Violation> vs = parser.parseWarningLine("C:\\UST3\\qse30\\Drivers\\drvCAN.c(79): Note 931: Both sides have side effects [MISRA 2012 Rule 1.3, required], [MISRA 2012 Rule 13.2, required] (Note <a href=\"/userContent/LintMsgRef.html#931\">931</a>)");
 		
 		assertEquals(2, vs.size());
-		assertEquals("Rule 1.3", vs.get(0).guidelineId);
+		assertEquals("Rule 1.3", parser.guidelineIdOf(vs.get(0)));
 		assertEquals(79, vs.get(0).lineNumber);
-		assertEquals("Rule 13.2", vs.get(1).guidelineId);
+		assertEquals("Rule 13.2", parser.guidelineIdOf(vs.get(1)));
 		assertEquals(79, vs.get(0).lineNumber);
 		assertEquals(79, vs.get(1).lineNumber);
 		assertEquals("C:\\UST3\\qse30\\Drivers\\drvCAN.c", vs.get(0).fileName);
@@ -87,19 +123,19 @@ public class PcLintWarningParserTest {
 		
 		assertEquals("C:\\UST3\\qse30\\Drivers\\drvCAN.c", vs.get(0).fileName);
 		assertEquals(75, vs.get(0).lineNumber);
-		assertEquals("Rule 13.2", vs.get(0).guidelineId);
+		assertEquals("Rule 13.2", parser.guidelineIdOf(vs.get(0)));
 		
 		vs = parser.parseWarningLine("C:\\UST3\\qse30\\Drivers\\drvCAN.c(75): Note 9029: blabla [MISRA C++ Rule 0-1-4]");
 		
 		assertEquals("C:\\UST3\\qse30\\Drivers\\drvCAN.c", vs.get(0).fileName);
 		assertEquals(75, vs.get(0).lineNumber);
-		assertEquals("Rule 0-1-4", vs.get(0).guidelineId);
+		assertEquals("Rule 0-1-4", parser.guidelineIdOf(vs.get(0)));
 		
 		vs = parser.parseWarningLine("C:\\UST3\\qse30\\Drivers\\drvCAN.c(75): Note 9029: blabla [MISRA Rule 11.2]");
 		
 		assertEquals("C:\\UST3\\qse30\\Drivers\\drvCAN.c", vs.get(0).fileName);
 		assertEquals(75, vs.get(0).lineNumber);
-		assertEquals("Rule 11.2", vs.get(0).guidelineId);		
+		assertEquals("Rule 11.2", parser.guidelineIdOf(vs.get(0)));		
 	}
 	
 	@Test
@@ -137,6 +173,164 @@ public class PcLintWarningParserTest {
         assertEquals(1, reqIds.size());      	    
 	}
 	
+    @Test
+    public void findsSuppressionCommentsAndLinesInLocalSourceFile() throws IOException {
+        File file = folder.newFile("source.c");
+        Files.write(file.toPath(), ("int a;\r\nint b; /*lint -e9029 DEVIATION(D1) */\n"
+                + "/*\n * lint is not a suppression here\n */\nint c; //lint -e9029\n").getBytes(StandardCharsets.UTF_8));
+        PcLintWarningParser parser = new PcLintWarningParser();
+        parser.setWorkspace(new FilePath(folder.getRoot()));
+
+        List<CommentProperties> comments = parser.parseSourceFile("source.c");
+
+        assertEquals(2, comments.size());
+        assertEquals(2, comments.get(0).lineNumber);
+        assertTrue(comments.get(0).suppressions.get("Rule 10.4").isDeviation);
+        assertEquals(6, comments.get(1).lineNumber);
+        assertFalse(comments.get(1).suppressions.get("Rule 10.4").isDeviation);
+    }
+
+    @Test
+    public void findsCommentsOfOtherToolsInTheSameScan() throws IOException {
+        File file = folder.newFile("source.c");
+        Files.write(file.toPath(), ("int a; /*lint -e9029 DEVIATION(D1) */\n"
+                + "int b; // cppcheck-suppress misra-c2012-5.2\n"
+                + "int c; // cppcheck-suppress nothing MISRA\n").getBytes(StandardCharsets.UTF_8));
+        PcLintWarningParser parser = new PcLintWarningParser();
+        parser.initialize(MisraVersion.C_2012);
+        parser.setWorkspace(new FilePath(folder.getRoot()));
+        CppcheckWarningParser cppcheck = new CppcheckWarningParser();
+        cppcheck.initialize(MisraVersion.C_2012);
+        cppcheck.setLogger(parser.out);
+
+        parser.parseSourceFiles(Arrays.asList("source.c"), Arrays.<WarningParser>asList(cppcheck));
+
+        assertEquals(ComplianceStatus.DEVIATIONS, statusOf(parser, "Rule 10.4"));
+        assertEquals(ComplianceStatus.VIOLATIONS, statusOf(parser, "Rule 5.2"));
+        assertEquals(ComplianceStatus.COMPLIANT, statusOf(cppcheck, "Rule 5.2"));
+        assertEquals(WarningParser.ERR_COULD_NOT_DETERMINE_SUPPRESSED_GUIDELINE, parser.getErrorCode());
+    }
+
+    @Test
+    public void repeatedCommentsAreParsedOnceButReportedEachTime() throws IOException {
+        File file = folder.newFile("source.c");
+        Files.write(file.toPath(), ("int a; //lint !e9029 DEVIATION(D1, , Rule 1.1)\n"
+                + "int b; //lint !e9029 DEVIATION(D1, , Rule 1.1)\n").getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        PcLintWarningParser parser = spy(new PcLintWarningParser());
+        parser.initialize(MisraVersion.C_2012);
+        parser.setWorkspace(new FilePath(folder.getRoot()));
+        parser.setLogger(new PrintStream(log, true, "UTF-8"));
+        String text = "!e9029 DEVIATION(D1, , Rule 1.1)";
+
+        List<CommentProperties> comments = parser.parseSourceFile("source.c");
+
+        verify(parser, times(1)).getGuidelineIdsFromComment(text);
+        assertNotSame(comments.get(0).suppressions.get("Rule 10.4"), comments.get(1).suppressions.get("Rule 10.4"));
+        String output = new String(log.toByteArray(), StandardCharsets.UTF_8);
+        assertEquals(2, output.split("Deviation tag found for the guideline Rule 1.1", -1).length - 1);
+        assertEquals(WarningParser.ERR_GUIDELINE_NOT_FOUND, parser.getErrorCode());
+
+        parser.setDeviationPattern("\\bDEVIATION\\(\\s*([^,\\(\\)]+?)\\s*(?:\\)|,.*\\))(?:(x)(x))?");
+        comments = parser.parseSourceFile("source.c");
+
+        // Changing a pattern drops the earlier parses
+        verify(parser, times(2)).getGuidelineIdsFromComment(text);
+        assertTrue(comments.get(1).suppressions.get("Rule 10.4").isDeviation);
+        assertEquals("D1", comments.get(1).suppressions.get("Rule 10.4").deviationReference);
+    }
+
+    @Test
+    public void correlatesWarningsWithSuppressionComments() throws IOException {
+        File file = folder.newFile("source.c");
+        Files.write(file.toPath(), ("/*lint -e9050 FALSE_POSITIVE */\n"
+                + "int a; //lint !e9029 DEVIATION(D1)\n"
+                + "int b;\n"
+                + "int c; //lint !e9034 DEVIATION(D2)\n").getBytes(StandardCharsets.UTF_8));
+        PcLintWarningParser parser = new PcLintWarningParser();
+        parser.initialize(MisraVersion.C_2012);
+        parser.setWorkspace(new FilePath(folder.getRoot()));
+        parser.setLogFilePath("gcs.log");
+        parser.setCorrelateSuppressions(true);
+
+        parser.parseWarnings(Arrays.asList("source.c(2): Note 9029: Mismatched [MISRA 2012 Rule 10.4, required]",
+                "source.c(3): Note 9029: Mismatched [MISRA 2012 Rule 10.4, required]",
+                "source.c(9): Note 9050: Precedence [MISRA 2012 Rule 12.1, advisory]"));
+        parser.parseSourceFiles(Arrays.asList("source.c"));
+
+        // The violations are kept as reported, only the suppressions are counted
+        assertEquals(ComplianceStatus.VIOLATIONS, statusOf(parser, "Rule 10.4"));
+        assertEquals(ComplianceStatus.VIOLATIONS, statusOf(parser, "Rule 12.1"));
+        assertEquals(ComplianceStatus.DEVIATIONS, statusOf(parser, "Rule 10.3"));
+        assertEquals(2, parser.getUsedSuppressionCount());
+        assertEquals(1, parser.getStaleSuppressionCount());
+        assertEquals(3, parser.getViolationStore().size());
+        assertEquals(2, parser.getViolationCounts()[indexOfGuideline(parser, "Rule 10.4")]);
+        assertEquals(1, parser.getViolationCounts()[indexOfGuideline(parser, "Rule 12.1")]);
+        String log = new String(Files.readAllBytes(new File(folder.getRoot(), "gcs.log").toPath()),
+                StandardCharsets.ISO_8859_1);
+        assertTrue(log.contains("source.c:2: info: Suppression of Rule 10.4 matches 1 warning\n"));
+        assertTrue(log.contains("source.c:4: warning: Suppression of Rule 10.3 matches no warning\n"));
+    }
+
+    @Test
+    public void fastPathFindsSameViolationsAsRegex() {
+        PcLintWarningParser parser = new PcLintWarningParser();
+        String[] lines = {
+                "C:\\src\\drvCAN.c(75): Note 9029: Mismatched types [MISRA 2012 Rule 10.4, required]",
+                "src/a (1).c(79): Note 931: Both sides [MISRA 2012 Rule 1.3, required], [MISRA 2012 Rule 13.2, required]",
+                "file.cpp(12): Info 774: Always true [MISRA C++ Rule 0-1-1] [MISRA C++ Rule 0-1-9]",
+                "file.c(3): Warning 1: [MISRA 2004 Rule 13.2:, advisory]",
+                "file.c(3): Warning 1: [MISRA Rule 1.1, unknown] [MISRA Rule 1.2]",
+                "file.c(3): Warning 1: [MISRA [MISRA Rule 1.2]",
+                "file.c(3): Warning 1: [Not MISRA] [MISRA Rule 1.2]",
+                "file.c(x): Warning 1: (2): Error 2: [MISRA Rule 1.2]",
+                "file.c(3): Remark 1: [MISRA Rule 1.2]",
+                "file.c(3): Note 9029: unterminated [MISRA 2012 Rule 10.4",
+                "file.c(3): Note 9029: no tag",
+        };
+        for (String line : lines) {
+            List<Violation> expected = parser.parseWarningLineWithRegex(line);
+            List<Violation> actual = parser.parseWarningLine(line);
+            assertEquals(line, expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(line, expected.get(i).fileName, actual.get(i).fileName);
+                assertEquals(line, expected.get(i).lineNumber, actual.get(i).lineNumber);
+                assertEquals(line, parser.guidelineIdOf(expected.get(i)), parser.guidelineIdOf(actual.get(i)));
+                assertEquals(line, expected.get(i).guidelineIndex, actual.get(i).guidelineIndex);
+            }
+        }
+    }
+
+    @Test
+    public void fastPathLeavesUnusualLinesToRegex() {
+        PcLintWarningParser parser = new PcLintWarningParser();
+
+        assertNotNull(parser.splitWarningLine("file.c(3): Note 9029: text [MISRA 2012 Rule 10.4, required]"));
+        assertNull(parser.splitWarningLine("file.c(x): Warning 1: (2): Error 2: [MISRA Rule 1.2]"));
+        assertNull(parser.splitWarningLine("file.c(3): Warning 1: [Not MISRA] [MISRA Rule 1.2]"));
+    }
+
+    @Test
+    public void sessionsDoNotShareStateWithEachOtherOrTheirOrigin() {
+        PcLintWarningParser extension = new PcLintWarningParser();
+        extension.setNonMisraPattern("\\bNOT_MISRA");
+        FilePath workspace = new FilePath(folder.getRoot());
+
+        WarningParser first = extension.newSession(MisraVersion.CPP_2008, workspace);
+        WarningParser second = extension.newSession(MisraVersion.CPP_2008, workspace);
+        first.parseWarnings(Arrays.asList("file.cpp(1): Info 774: Boolean always evaluates [MISRA C++ Rule 0-1-1]"));
+
+        assertTrue(first instanceof PcLintWarningParser);
+        assertEquals(MisraVersion.CPP_2008, second.getMisraVersion());
+        assertSame(workspace, second.getWorkspace());
+        assertEquals("\\bNOT_MISRA", second.getNonMisraPattern());
+        assertEquals(ComplianceStatus.VIOLATIONS, statusOf(first, "Rule 0-1-1"));
+        assertEquals(ComplianceStatus.COMPLIANT, statusOf(second, "Rule 0-1-1"));
+        assertNull(statusOf(extension, "Rule 0-1-1"));
+        assertEquals(MisraVersion.C_2012, extension.getMisraVersion());
+    }
+
     @Test
     public void testSupportedMisraVersions()
     {
@@ -0,0 +1,114 @@
+package rortveiten.misra;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SarifReaderTest {
+
+    private static final String LOG = "{\n"
+            + "  \"$schema\": \"https://json.schemastore.org/sarif-2.1.0.json\",\n"
+            + "  \"version\": \"2.1.0\",\n"
+            + "  \"runs\": [\n"
+            + "    {\n"
+            + "      \"tool\": { \"driver\": { \"name\": \"checker\", \"rules\": [\n"
+            + "        { \"id\": \"misra-c2012-10.4\", \"shortDescription\": { \"text\": \"Rule 10.4\" } },\n"
+            + "        { \"id\": \"misra-c2012-15.6\" } ] } },\n"
+            + "      \"results\": [\n"
+            + "        { \"ruleId\": \"misra-c2012-10.4\", \"message\": { \"text\": \"[x]\" },\n"
+            + "          \"locations\": [ { \"physicalLocation\": { \"artifactLocation\": { \"uri\": \"src/a.c\" },\n"
+            + "            \"region\": { \"startLine\": 12, \"startColumn\": 3 } } },\n"
+            + "            { \"physicalLocation\": { \"artifactLocation\": { \"uri\": \"src/b.c\" } } } ] },\n"
+            + "        { \"ruleIndex\": 1, \"locations\": [] },\n"
+            + "        { \"rule\": { \"id\": \"style-1\", \"index\": 5 } }\n"
+            + "      ]\n"
+            + "    },\n"
+            + "    { \"tool\": { \"driver\": { \"name\": \"other\" } }, \"results\": [ { \"ruleIndex\": 1 } ] }\n"
+            + "  ]\n"
+            + "}\n";
+
+    private List<String> read(String log) throws IOException {
+        final List<String> results = new ArrayList<String>();
+        SarifReader.read(new StringReader(log), new SarifReader.ResultHandler() {
+            @Override
+            public void result(String ruleId, String fileName, int lineNumber) {
+                results.add(ruleId + " " + fileName + ":" + lineNumber);
+            }
+        });
+        return results;
+    }
+
+    @Test
+    public void readsRuleAndFirstLocationOfEachResult() throws IOException {
+        List<String> results = read(LOG);
+
+        assertEquals(4, results.size());
+        assertEquals("misra-c2012-10.4 src/a.c:12", results.get(0));
+        assertEquals("misra-c2012-15.6 :0", results.get(1));
+        assertEquals("style-1 :0", results.get(2));
+        assertEquals("null :0", results.get(3));
+    }
+
+    @Test
+    public void skipsResultsThatAreNotFailures() throws IOException {
+        List<String> results = read("{ \"runs\": [ { \"results\": [\n"
+                + "  { \"ruleId\": \"misra-c2012-1.1\", \"kind\": \"pass\" },\n"
+                + "  { \"ruleId\": \"misra-c2012-1.2\", \"kind\": \"notApplicable\" },\n"
+                + "  { \"ruleId\": \"misra-c2012-1.3\", \"kind\": \"informational\" },\n"
+                + "  { \"ruleId\": \"misra-c2012-1.4\", \"kind\": \"fail\" } ] } ] }");
+
+        assertEquals(1, results.size());
+        assertEquals("misra-c2012-1.4 :0", results.get(0));
+    }
+
+    @Test
+    public void skipsSuppressedResults() throws IOException {
+        List<String> results = read("{ \"runs\": [ { \"results\": [\n"
+                + "  { \"ruleId\": \"misra-c2012-1.1\", \"suppressions\": [ { \"kind\": \"inSource\" } ] },\n"
+                + "  { \"ruleId\": \"misra-c2012-1.2\", \"suppressions\": [] },\n"
+                + "  { \"ruleId\": \"misra-c2012-1.3\",\n"
+                + "    \"suppressions\": [ { \"kind\": \"external\", \"status\": \"rejected\" } ] } ] } ] }");
+
+        assertEquals(2, results.size());
+        assertEquals("misra-c2012-1.2 :0", results.get(0));
+        assertEquals("misra-c2012-1.3 :0", results.get(1));
+    }
+
+    @Test
+    public void turnsUrisIntoPaths() throws IOException {
+        List<String> results = read("{ \"runs\": [ {\n"
+                + "  \"originalUriBaseIds\": { \"SRCROOT\": { \"uri\": \"file:///C:/ws/\" } },\n"
+                + "  \"results\": [\n"
+                + "  { \"ruleId\": \"r\", \"locations\": [ { \"physicalLocation\": {\n"
+                + "    \"artifactLocation\": { \"uri\": \"src/a%20b.c\", \"uriBaseId\": \"SRCROOT\" } } } ] },\n"
+                + "  { \"ruleId\": \"r\", \"locations\": [ { \"physicalLocation\": {\n"
+                + "    \"artifactLocation\": { \"uri\": \"file:///ws/c.c\", \"uriBaseId\": \"SRCROOT\" } } } ] } ] },\n"
+                + "  { \"results\": [\n"
+                + "  { \"ruleId\": \"r\", \"locations\": [ { \"physicalLocation\": {\n"
+                + "    \"artifactLocation\": { \"uri\": \"src/d.c\", \"uriBaseId\": \"SRCROOT\" } } } ] } ],\n"
+                + "  \"originalUriBaseIds\": { \"SRCROOT\": { \"uri\": \"file:///C:/ws/\" } } } ] }");
+
+        assertEquals(3, results.size());
+        assertEquals("r C:/ws/src/a b.c:0", results.get(0));
+        assertEquals("r /ws/c.c:0", results.get(1));
+        // A base given after the results is not waited for
+        assertEquals("r src/d.c:0", results.get(2));
+        assertEquals("/ws/src/a.c", SarifReader.toPath("file:/ws/src/a.c"));
+        assertEquals("//server/share/a.c", SarifReader.toPath("file://server/share/a.c"));
+        assertEquals("src/\u00e5.c", SarifReader.toPath("src/%C3%A5.c"));
+        assertEquals("https://example.com/a.c", SarifReader.toPath("https://example.com/a.c"));
+    }
+
+    @Test
+    public void recognizesSarifLogs() {
+        assertTrue(SarifReader.isSarif(LOG.substring(0, 100)));
+        assertTrue(SarifReader.isSarif("\uFEFF{\"runs\": []}"));
+        assertFalse(SarifReader.isSarif("[file.c:1] (style) sarif [misra-c2012-1.1]"));
+        assertFalse(SarifReader.isSarif("<?xml version=\"1.0\"?>"));
+    }
+}
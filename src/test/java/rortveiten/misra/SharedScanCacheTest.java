@@ -0,0 +1,111 @@
+package rortveiten.misra;
+
+import static org.junit.Assert.*;
+import static rortveiten.misra.TestGuidelines.statusOf;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import hudson.FilePath;
+import rortveiten.misra.Guideline.ComplianceStatus;
+import rortveiten.misra.WarningParser.CommentProperties;
+import rortveiten.misra.WarningParser.Suppression;
+
+public class SharedScanCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<CommentProperties> aComment() {
+        CommentProperties comment = new CommentProperties();
+        comment.fileName = "a.c";
+        comment.lineNumber = 3;
+        comment.suppressions = new HashMap<String, Suppression>();
+        Suppression suppression = new Suppression();
+        suppression.guidelineId = "Rule 10.4";
+        suppression.isFalsePositive = true;
+        comment.suppressions.put(suppression.guidelineId, suppression);
+        return Arrays.asList(comment);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void findsCommentsByContentForAnyFile() throws Exception {
+        SharedScanCache cache = new SharedScanCache(folder.newFolder("cache"), 1024 * 1024, "fingerprint");
+        String key = cache.key(bytes("int a; /*lint -e9029 */"));
+        cache.put(key, aComment());
+
+        List<CommentProperties> comments = cache.get(cache.key(bytes("int a; /*lint -e9029 */")), "b.c");
+
+        assertEquals(1, comments.size());
+        assertEquals("b.c", comments.get(0).fileName);
+        assertEquals(3, comments.get(0).lineNumber);
+        assertTrue(comments.get(0).suppressions.get("Rule 10.4").isFalsePositive);
+        assertNull(cache.get(cache.key(bytes("int b;")), "b.c"));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void keyDependsOnFingerprint() throws Exception {
+        File dir = folder.newFolder("cache");
+        byte[] content = bytes("int a;");
+
+        assertNotEquals(new SharedScanCache(dir, 1024, "one").key(content),
+                new SharedScanCache(dir, 1024, "two").key(content));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedEntriesWhenFull() throws Exception {
+        File dir = folder.newFolder("cache");
+        SharedScanCache cache = new SharedScanCache(dir, 1024 * 1024, "fingerprint");
+        String[] keys = new String[3];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = cache.key(bytes("file " + i));
+            cache.put(keys[i], aComment());
+        }
+        long entrySize = cache.entryFile(keys[0]).length();
+        long now = System.currentTimeMillis();
+        cache.entryFile(keys[0]).setLastModified(now - 30000);
+        cache.entryFile(keys[1]).setLastModified(now - 20000);
+        cache.entryFile(keys[2]).setLastModified(now - 10000);
+        assertNotNull(cache.get(keys[0], "a.c")); // Now the most recently used
+
+        SharedScanCache small = new SharedScanCache(dir, entrySize * 2, "fingerprint");
+        assertEquals(2, small.evict());
+
+        assertNotNull(small.get(keys[0], "a.c"));
+        assertNull(small.get(keys[1], "a.c"));
+        assertNull(small.get(keys[2], "a.c"));
+    }
+
+    @Test
+    public void filesWithTheSameContentAreLexedOnce() throws Exception {
+        File cacheDir = folder.newFolder("cache");
+        for (String workspace : new String[] { "one", "two" }) {
+            File dir = folder.newFolder(workspace);
+            Files.write(new File(dir, "main.c").toPath(), bytes("int a; /*lint -e9029 */\n"));
+            PcLintWarningParser parser = new PcLintWarningParser();
+            parser.setWorkspace(new FilePath(dir));
+            parser.setSharedScanCache(cacheDir, 1024 * 1024);
+
+            parser.parseSourceFiles(Arrays.asList("main.c"));
+
+            assertEquals(ComplianceStatus.VIOLATIONS, statusOf(parser, "Rule 10.4"));
+        }
+        int entries = 0;
+        for (File dir : cacheDir.listFiles())
+            entries += dir.listFiles().length;
+        assertEquals(1, entries);
+    }
+}
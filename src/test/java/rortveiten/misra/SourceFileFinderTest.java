@@ -0,0 +1,56 @@
+package rortveiten.misra;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SourceFileFinderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private void create(String... paths) throws IOException {
+        for (String path : paths) {
+            File file = new File(folder.getRoot(), path);
+            file.getParentFile().mkdirs();
+            file.createNewFile();
+        }
+    }
+
+    @Test
+    public void findsFilesMatchingIncludesButNotExcludes() throws IOException {
+        create("main.c", "src/a.c", "src/a.h", "src/drivers/can.c", "src/test/a_test.c", "build/gen.c", "doc/a.txt",
+                ".git/x.c");
+
+        SourceFileFinder finder = new SourceFileFinder("**/*.c, src/**/*.h", "build/**,**/test/**");
+
+        assertEquals(Arrays.asList("main.c", "src/a.c", "src/a.h", "src/drivers/can.c"),
+                finder.find(folder.getRoot()));
+    }
+
+    @Test
+    public void returnsInternedPaths() throws IOException {
+        create("src/a.c");
+
+        String path = new SourceFileFinder("src/", null).find(folder.getRoot()).get(0);
+
+        assertSame("src/a.c", path);
+    }
+
+    @Test
+    public void convertsAntPatternsToRegularExpressions() {
+        assertTrue("src/x/y/a.c".matches(SourceFileFinder.toRegex("src/**/*.c")));
+        assertTrue("src/a.c".matches(SourceFileFinder.toRegex("src/**/*.c")));
+        assertFalse("src/x/a.h".matches(SourceFileFinder.toRegex("src/**/*.c")));
+        assertFalse("src/x/a.c".matches(SourceFileFinder.toRegex("src/*.c")));
+        assertTrue("a1.c".matches(SourceFileFinder.toRegex("a?.c")));
+        assertFalse("a1xc".matches(SourceFileFinder.toRegex("a?.c")));
+        assertTrue("any/thing".matches(SourceFileFinder.toRegex("**")));
+    }
+}
@@ -0,0 +1,131 @@
+package rortveiten.misra;
+
+import static org.junit.Assert.*;
+import static rortveiten.misra.TestGuidelines.statusOf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import hudson.FilePath;
+import rortveiten.misra.Guideline.ComplianceStatus;
+import rortveiten.misra.WarningParser.CommentProperties;
+import rortveiten.misra.WarningParser.Suppression;
+
+public class SourceScanCacheTest {
+
+    private static final long AN_HOUR_AGO = System.currentTimeMillis() - 3600 * 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<CommentProperties> someComments() {
+        CommentProperties comment = new CommentProperties();
+        comment.fileName = "main.c";
+        comment.lineNumber = 12;
+        comment.toolName = "PC-lint";
+        comment.suppressions = new HashMap<String, Suppression>();
+        Suppression suppression = new Suppression();
+        suppression.guidelineId = "Rule 10.4";
+        suppression.isDeviation = true;
+        suppression.deviationReference = "D1";
+        comment.suppressions.put(suppression.guidelineId, suppression);
+        CommentProperties unresolved = new CommentProperties();
+        unresolved.fileName = "main.c";
+        unresolved.lineNumber = 20;
+        unresolved.unresolvedComment = "-e123";
+        unresolved.suppressions = new HashMap<String, Suppression>();
+        return Arrays.asList(comment, unresolved);
+    }
+
+    private static SourceScanCache roundTrip(SourceScanCache cache, String fingerprint) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cache.write(out);
+        return SourceScanCache.read(new ByteArrayInputStream(out.toByteArray()), fingerprint);
+    }
+
+    @Test
+    public void keepsCommentsOfFilesWithSameSizeAndModificationTime() throws IOException {
+        SourceScanCache cache = new SourceScanCache("fingerprint");
+        cache.put("main.c", 100, AN_HOUR_AGO, someComments());
+
+        SourceScanCache read = roundTrip(cache, "fingerprint");
+
+        List<CommentProperties> comments = read.get("main.c", 100, AN_HOUR_AGO);
+        assertEquals(2, comments.size());
+        assertEquals("main.c", comments.get(0).fileName);
+        assertEquals(12, comments.get(0).lineNumber);
+        assertEquals("PC-lint", comments.get(0).toolName);
+        assertTrue(comments.get(0).suppressions.get("Rule 10.4").isDeviation);
+        assertEquals("D1", comments.get(0).suppressions.get("Rule 10.4").deviationReference);
+        assertNull(comments.get(0).suppressions.get("Rule 10.4").deviationLink);
+        assertEquals("-e123", comments.get(1).unresolvedComment);
+        assertNull(read.get("main.c", 101, AN_HOUR_AGO));
+        assertNull(read.get("main.c", 100, AN_HOUR_AGO + 1));
+        assertEquals(1, read.getHits());
+    }
+
+    @Test
+    public void isEmptyForAnotherFingerprint() throws IOException {
+        SourceScanCache cache = new SourceScanCache("fingerprint");
+        cache.put("main.c", 100, AN_HOUR_AGO, someComments());
+
+        assertEquals(0, roundTrip(cache, "other fingerprint").size());
+    }
+
+    @Test
+    public void doesNotCacheRecentlyModifiedFiles() {
+        SourceScanCache cache = new SourceScanCache("fingerprint");
+        cache.put("main.c", 100, System.currentTimeMillis(), someComments());
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void fingerprintDependsOnTagPatterns() {
+        PcLintWarningParser parser = new PcLintWarningParser();
+        List<WarningParser> tools = new ArrayList<WarningParser>();
+        tools.add(parser);
+        String before = SourceScanCache.fingerprint(tools, "UTF-8");
+
+        parser.setDeviationPattern("DEV\\(([^\\)]*)\\)");
+
+        assertNotEquals(before, SourceScanCache.fingerprint(tools, "UTF-8"));
+    }
+
+    @Test
+    public void unchangedFilesAreNotReadAgain() throws Exception {
+        File source = folder.newFile("main.c");
+        Files.write(source.toPath(), "int a; /*lint -e9029 */\nint b; /*lint -e4444 */\n".getBytes(StandardCharsets.UTF_8));
+        source.setLastModified(AN_HOUR_AGO);
+        List<String> files = Arrays.asList("main.c");
+        PcLintWarningParser first = new PcLintWarningParser();
+        first.setWorkspace(new FilePath(folder.getRoot()));
+        first.setScanCacheFilePath("scan.cache");
+        first.parseSourceFiles(files);
+        // Same size and modification time, but a different suppression
+        Files.write(source.toPath(), "int a; /*lint -e9031 */\nint b; /*lint -e4444 */\n".getBytes(StandardCharsets.UTF_8));
+        source.setLastModified(AN_HOUR_AGO);
+
+        PcLintWarningParser second = new PcLintWarningParser();
+        second.setWorkspace(new FilePath(folder.getRoot()));
+        second.setScanCacheFilePath("scan.cache");
+        second.parseSourceFiles(files);
+
+        assertTrue(new File(folder.getRoot(), "scan.cache").exists());
+        assertEquals(ComplianceStatus.VIOLATIONS, statusOf(second, "Rule 10.4"));
+        assertEquals(ComplianceStatus.COMPLIANT, statusOf(second, "Rule 10.6"));
+        assertEquals(WarningParser.ERR_COULD_NOT_DETERMINE_SUPPRESSED_GUIDELINE, second.getErrorCode());
+    }
+}
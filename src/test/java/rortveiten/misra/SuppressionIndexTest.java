@@ -0,0 +1,72 @@
+package rortveiten.misra;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import rortveiten.misra.WarningParser.Suppression;
+
+public class SuppressionIndexTest {
+
+    @Test
+    public void findsClosestSuppressionCoveringLine() {
+        Suppression restOfFile = new Suppression();
+        Suppression line10 = new Suppression();
+        Suppression lines20to21 = new Suppression();
+        Suppression otherGuideline = new Suppression();
+        SuppressionIndex index = new SuppressionIndex(2);
+        index.add("a.c", 0, 20, 21, lines20to21);
+        index.add("a.c", 0, 10, 10, line10);
+        index.add("a.c", 0, 5, Integer.MAX_VALUE, restOfFile);
+        index.add("a.c", 1, 1, 2, otherGuideline);
+        index.build();
+
+        SuppressionIndex.Ranges ranges = index.rangesOf("a.c")[0];
+        assertNull(ranges.find(4));
+        assertSame(restOfFile, ranges.find(5));
+        assertSame(line10, ranges.find(10));
+        assertSame(restOfFile, ranges.find(11));
+        assertSame(lines20to21, ranges.find(21));
+        assertSame(restOfFile, ranges.find(1000));
+        assertSame(otherGuideline, index.rangesOf("a.c")[1].find(2));
+        assertNull(index.rangesOf("a.c")[1].find(3));
+        assertNull(index.rangesOf("b.c"));
+    }
+
+    @Test
+    public void findsInnermostOfNestedRanges() {
+        Suppression file = new Suppression();
+        Suppression outerBlock = new Suppression();
+        Suppression innerBlock = new Suppression();
+        SuppressionIndex index = new SuppressionIndex(1);
+        index.add("a.c", 0, 1, Integer.MAX_VALUE, file);
+        index.add("a.c", 0, 10, 40, outerBlock);
+        index.add("a.c", 0, 20, 30, innerBlock);
+        index.build();
+
+        SuppressionIndex.Ranges ranges = index.rangesOf("a.c")[0];
+        assertSame(file, ranges.find(9));
+        assertSame(outerBlock, ranges.find(19));
+        assertSame(innerBlock, ranges.find(20));
+        assertSame(innerBlock, ranges.find(30));
+        assertSame(outerBlock, ranges.find(31));
+        assertSame(file, ranges.find(41));
+        assertSame(file, ranges.find(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void findsWideRangeBetweenShortRanges() {
+        Suppression wide = new Suppression();
+        SuppressionIndex index = new SuppressionIndex(1);
+        index.add("a.c", 0, 1, 100, wide);
+        for (int line = 2; line < 50; line += 2)
+            index.add("a.c", 0, line, line, new Suppression());
+        index.build();
+
+        SuppressionIndex.Ranges ranges = index.rangesOf("a.c")[0];
+        assertSame(wide, ranges.find(49));
+        assertSame(wide, ranges.find(3));
+        assertNotSame(wide, ranges.find(4));
+        assertNull(ranges.find(101));
+    }
+}
@@ -0,0 +1,35 @@
+package rortveiten.misra;
+
+import java.util.List;
+
+import rortveiten.misra.Guideline.ComplianceStatus;
+
+/**
+ * Looks up the guidelines of a parser by id in the tests.
+ */
+final class TestGuidelines {
+    private TestGuidelines() {
+    }
+
+    /**
+     * @return The index of the guideline in the parser's guideline list, or -1
+     *         if it has no guideline of that id
+     */
+    static int indexOfGuideline(WarningParser parser, String guidelineId) {
+        List<Guideline> guidelines = parser.getGuidelines();
+        for (int i = 0; i < guidelines.size(); i++) {
+            if (guidelines.get(i).getId().equals(guidelineId))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return The status of the guideline, or null if the parser has no
+     *         guideline of that id
+     */
+    static ComplianceStatus statusOf(WarningParser parser, String guidelineId) {
+        int index = indexOfGuideline(parser, guidelineId);
+        return index < 0 ? null : parser.getGuidelines().get(index).getStatus();
+    }
+}
@@ -0,0 +1,79 @@
+package rortveiten.misra;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import rortveiten.misra.ViolationStore.FileViolations;
+import rortveiten.misra.ViolationStore.GuidelineViolations;
+import rortveiten.misra.WarningParser.MisraVersion;
+
+public class ViolationStoreTest {
+
+    private static final List<Guideline> GUIDELINES = Arrays.asList(new Guideline("Rule 10.4"),
+            new Guideline("Rule 12.1"));
+
+    @Test
+    public void keepsEveryViolationWithFileAndLine() {
+        ViolationStore store = new ViolationStore();
+        for (int i = 0; i < 3000; i++)
+            store.add(i % 2, "src/" + (i % 3) + ".c", i + 1);
+
+        assertEquals(3000, store.size());
+        assertEquals(1, store.getGuidelineIndex(2999));
+        assertEquals("src/2.c", store.getFileName(2999));
+        assertEquals(3000, store.getLineNumber(2999));
+        assertSame(store.getFileName(0), store.getFileName(3));
+    }
+
+    @Test
+    public void summarizesViolationsByFile() {
+        ViolationStore store = new ViolationStore();
+        store.add(1, "/ws/a.c", 7);
+        store.add(0, "a.c", 3);
+        store.add(0, "./a.c", 3);
+        store.add(0, "b.c", 1);
+        store.add(0, "", 0);
+        for (int line = 20; line > 0; line--)
+            store.add(1, "c.c", line);
+
+        List<FileViolations> summary = store.summarizeByFile(GUIDELINES, "/ws");
+
+        assertEquals(4, summary.size());
+        FileViolations c = summary.get(0);
+        assertEquals("c.c", c.getFileName());
+        assertEquals("1, 2, 3, 4, 5, 6, 7, 8, 9, 10, ...", c.getGuidelines().get(0).getLines());
+        FileViolations a = summary.get(1);
+        assertEquals("a.c", a.getFileName());
+        assertEquals(3, a.getViolationCount());
+        GuidelineViolations rule10_4 = a.getGuidelines().get(0);
+        assertEquals("Rule 10.4", rule10_4.getGuidelineId());
+        assertEquals(2, rule10_4.getCount());
+        assertEquals("3", rule10_4.getLines());
+        assertEquals(Integer.valueOf(1), a.getGuidelineCounts().get("Rule 12.1"));
+        assertEquals("", summary.get(2).getFileName());
+        assertEquals("", summary.get(2).getGuidelines().get(0).getLines());
+    }
+
+    @Test
+    public void parserKeepsViolationsOfOtherParsers() {
+        PcLintWarningParser parser = new PcLintWarningParser();
+        parser.setLogger(null);
+        PcLintWarningParser other = new PcLintWarningParser();
+        other.setLogger(null);
+        other.initialize(MisraVersion.C_2012);
+        parser.parseWarnings(Arrays.asList("a.c(3): Note 9029: Mismatched [MISRA 2012 Rule 10.4, required]"));
+        other.parseWarnings(Arrays.asList("b.c(5): Note 9050: [MISRA 2012 Rule 12.1, advisory]"));
+
+        parser.addViolationsFrom(other);
+
+        ViolationStore store = parser.getViolationStore();
+        assertEquals(2, store.size());
+        assertEquals("b.c", store.getFileName(1));
+        assertEquals(5, store.getLineNumber(1));
+        assertEquals("Rule 12.1", parser.getGuidelines().get(store.getGuidelineIndex(1)).getId());
+    }
+}
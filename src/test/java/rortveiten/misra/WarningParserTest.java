@@ -5,7 +5,9 @@ import org.mockito.Mockito;
 
 import rortveiten.misra.Guideline.Category;
 import rortveiten.misra.Guideline.ComplianceStatus;
+import rortveiten.misra.Guideline.DeviationReference;
 import rortveiten.misra.WarningParser.CommentProperties;
+import rortveiten.misra.WarningParser.CommentSpan;
 import rortveiten.misra.WarningParser.MisraVersion;
 import rortveiten.misra.WarningParser.Suppression;
 import rortveiten.misra.WarningParser.Violation;
@@ -17,6 +19,7 @@ import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -228,6 +231,135 @@ public class WarningParserTest {
 		verify(parser).parseWarningLine("Jau");
 	}
 	
+    @Test
+    public void warningParserReadsEachLineFromStream() throws IOException {
+        List<String> warningLines = Arrays.asList("Hau", "Jau");
+        List<Guideline> guidelines = someGuidelines();
+        WarningParser parser = getParserWithMockedCallsToLineParser(warningLines, someViolations(), guidelines);
+
+        parser.parseWarnings(new StringReader("Hau\r\n\r\nJau"));
+
+        verify(parser).parseWarningLine("Hau");
+        verify(parser).parseWarningLine("Jau");
+        verify(parser, never()).parseWarningLine("");
+        assertEquals(ComplianceStatus.VIOLATIONS, guidelines.get(0).getStatus());
+        assertEquals(ComplianceStatus.VIOLATIONS, guidelines.get(1).getStatus());
+    }
+
+    @Test
+    public void skipsLinesWithoutAnyOfTheLiterals() throws IOException {
+        List<Guideline> guidelines = someGuidelines();
+        WarningParser parser = getParserWithMockedCallsToLineParser(Arrays.asList("[X] Hau", "Jau [Y]"),
+                someViolations(), guidelines);
+        when(parser.warningLineLiterals()).thenReturn(new String[] { "[X]", "[Y]" });
+
+        parser.parseWarnings(new StringReader("[X] Hau\nRau\nJau [Y]\n[Z]"));
+
+        verify(parser).parseWarningLine("[X] Hau");
+        verify(parser).parseWarningLine("Jau [Y]");
+        verify(parser, never()).parseWarningLine("Rau");
+        verify(parser, never()).parseWarningLine("[Z]");
+        assertEquals(ComplianceStatus.VIOLATIONS, guidelines.get(1).getStatus());
+    }
+
+    @Test
+    public void readsViolationsFromSarifLog() throws IOException {
+        WarningParser parser = getWarningParserSpy(null);
+        parser.initialize(MisraVersion.C_2012);
+        String sarif = "{\"version\": \"2.1.0\", \"runs\": [{\"results\": ["
+                + "{\"ruleId\": \"misra-c2012-10.4\", \"locations\": [{\"physicalLocation\": "
+                + "{\"artifactLocation\": {\"uri\": \"a.c\"}, \"region\": {\"startLine\": 3}}}]},"
+                + "{\"ruleId\": \"nullPointer\"}]}]}";
+
+        parser.parseWarnings(new StringReader(sarif));
+
+        verify(parser, never()).parseWarningLine(anyString());
+        List<Guideline> guidelines = parser.getGuidelines();
+        for (int i = 0; i < guidelines.size(); i++) {
+            boolean violated = guidelines.get(i).getId().equals("Rule 10.4");
+            assertEquals(violated ? ComplianceStatus.VIOLATIONS : ComplianceStatus.COMPLIANT,
+                    guidelines.get(i).getStatus());
+        }
+        assertEquals(0, parser.getErrorCode());
+    }
+
+    @Test
+    public void mapsSarifRuleIdsToGuidelines() {
+        WarningParser parser = getWarningParserSpy(null);
+
+        assertEquals("Rule 10.4", parser.guidelineIdFromRuleId("misra-c2012-10.4"));
+        assertEquals("Directive 4.1", parser.guidelineIdFromRuleId("misra-c2012-dir-4.1"));
+        assertEquals("Rule 10.4", parser.guidelineIdFromRuleId("MISRA C:2012 Rule 10.4"));
+        assertEquals("Rule 0-1-1", parser.guidelineIdFromRuleId("MISRA C++ Rule 0-1-1"));
+        assertEquals("Directive 2.1", parser.guidelineIdFromRuleId("Dir 2.1"));
+        assertEquals(null, parser.guidelineIdFromRuleId("nullPointer"));
+        assertEquals(null, parser.guidelineIdFromRuleId("ruleset-1"));
+    }
+
+    @Test
+    public void addsViolationsFromOtherParser() {
+        WarningParser parser = getWarningParserSpy(null);
+        parser.initialize(MisraVersion.C_2012);
+        parser.readGrp(Arrays.asList("Rule 12.1, disapplied"));
+        WarningParser other = getWarningParserSpy(null);
+        other.initialize(MisraVersion.C_2012);
+        Violation v1 = new Violation();
+        v1.guidelineId = "Rule 10.4";
+        Violation v2 = new Violation();
+        v2.guidelineId = "Rule 12.1";
+        Violation v3 = new Violation();
+        v3.guidelineId = "Rule 99.9";
+        when(other.parseWarningLine("Hau")).thenReturn(Arrays.asList(v1, v1, v2, v3));
+        other.parseWarnings(Arrays.asList("Hau"));
+
+        parser.addViolationsFrom(other);
+
+        int rule10_4 = -1, rule12_1 = -1;
+        for (int i = 0; i < parser.getGuidelines().size(); i++) {
+            if (parser.getGuidelines().get(i).getId().equals("Rule 10.4"))
+                rule10_4 = i;
+            if (parser.getGuidelines().get(i).getId().equals("Rule 12.1"))
+                rule12_1 = i;
+        }
+        assertEquals(2, parser.getViolationCounts()[rule10_4]);
+        assertEquals(ComplianceStatus.VIOLATIONS, parser.getGuidelines().get(rule10_4).getStatus());
+        assertEquals(1, parser.getViolationCounts()[rule12_1]);
+        assertEquals(ComplianceStatus.DISAPPLIED, parser.getGuidelines().get(rule12_1).getStatus());
+        assertEquals(WarningParser.ERR_GUIDELINE_NOT_FOUND, parser.getErrorCode());
+    }
+
+    @Test
+    public void countsViolationsOfEachGuideline() {
+        List<String> warningLines = Arrays.asList("Hau", "Jau", "Hau");
+        List<Guideline> guidelines = someGuidelines();
+        List<List<Violation>> violations = someViolations();
+        violations.add(violations.get(0));
+        WarningParser parser = getParserWithMockedCallsToLineParser(warningLines, violations, guidelines);
+
+        parser.parseWarnings(warningLines);
+
+        int[] counts = parser.getViolationCounts();
+        assertEquals(2, counts[0]);
+        assertEquals(1, counts[1]);
+    }
+
+    @Test
+    public void usesGuidelineIndexSetByParser() {
+        WarningParser parser = getWarningParserSpy(null);
+        parser.initialize(MisraVersion.C_2012);
+        Violation v = new Violation();
+        v.guidelineId = "not used when the index is set";
+        v.guidelineIndex = parser.guidelineIndex("Rule ", "[misra-c2012-10.4]", 13, 17);
+        when(parser.parseWarningLine("Hau")).thenReturn(Arrays.asList(v));
+
+        parser.parseWarnings(Arrays.asList("Hau"));
+
+        Guideline guideline = parser.getGuidelines().get(v.guidelineIndex);
+        assertEquals("Rule 10.4", guideline.getId());
+        assertEquals(ComplianceStatus.VIOLATIONS, guideline.getStatus());
+        assertEquals(0, parser.getErrorCode());
+    }
+
 	@Test
 	public void warningParserIgnoresNullValuesReturnedFromVirtualCall() {
 		List<String> warningLines = Arrays.asList("Hau", "Rau", "Jau");
@@ -326,6 +458,28 @@ public class WarningParserTest {
 		}
 	}
 	
+    @Test
+    public void parallelScanGivesSameResultAsSequentialScan() {
+        List<String> files = Arrays.asList(resourceFileName("anothersourcefile.c"), resourceFileName("sourcefile.c"),
+                resourceFileName("anothersourcefile.c"));
+        List<Guideline> guidelines = Arrays.asList(new Guideline("Req1"), new Guideline("Req2"));
+        WarningParser parser = getWarningParserSpy(guidelines);
+        when(parser.findSuppressionComments("Somethingelse")).thenReturn(Arrays.asList("First DEVIATION(D2)"));
+        when(parser.findSuppressionComments("Sourcefilecontent")).thenReturn(Arrays.asList("Second DEVIATION(D1)", "Third"));
+        when(parser.getGuidelineIdsFromComment(anyString())).thenReturn(new HashSet<String>(Arrays.asList("Req1")));
+        when(parser.getGuidelineIdsFromComment("Third")).thenReturn(new HashSet<String>(Arrays.asList("Req3")));
+        parser.setParallelism(3);
+
+        parser.parseSourceFiles(files);
+
+        List<DeviationReference> references = guidelines.get(0).getDeviationReferences();
+        assertEquals(3, references.size());
+        assertEquals("D2", references.get(0).getReference());
+        assertEquals("D1", references.get(1).getReference());
+        assertEquals("D2", references.get(2).getReference());
+        assertEquals(WarningParser.ERR_GUIDELINE_NOT_FOUND, parser.getErrorCode());
+    }
+
 	private List<Guideline> someOtherGuidelines()
 	{
 		List<Guideline> ret = new ArrayList<Guideline>();
@@ -557,6 +711,24 @@ public class WarningParserTest {
 	}
 	
 	
+    @Test
+    public void defaultCommentSpansLocateEachCommentInOrder() {
+        String content = "a //X\nb //X\nc //Y";
+        WarningParser parser = getWarningParserSpy(null);
+        when(parser.findSuppressionComments(content)).thenReturn(Arrays.asList("X", "X", "Z"));
+
+        List<CommentSpan> spans = parser.findSuppressionCommentSpans(content);
+
+        assertEquals(3, spans.size());
+        assertEquals(4, spans.get(0).start);
+        assertEquals(1, spans.get(0).lineNumber);
+        assertEquals(10, spans.get(1).start);
+        assertEquals(11, spans.get(1).end);
+        assertEquals(2, spans.get(1).lineNumber);
+        assertEquals("Z", spans.get(2).text);
+        assertEquals(-1, spans.get(2).lineNumber);
+    }
+
 	@Test 
 	public void findsLinkAndReferenceForDeviations()
 	{